@@ -0,0 +1,290 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.hawkular.apm.qe.JaegerQEBase.INSTRUMENTATION_TYPE;
+import org.hawkular.apm.qe.model.conf.JaegerAgentConf;
+import org.hawkular.apm.qe.tracer.ConcurrentStatsReporter;
+import org.hawkular.apm.qe.tracer.FlushableReporter;
+import org.hawkular.apm.qe.tracer.JaegerOpenTracing;
+import org.hawkular.apm.qe.tracer.ZipkinOpenTracing;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import zipkin.reporter.AsyncReporter;
+
+/**
+ * Jaeger and zipkin instrumentations head to head: the same sampled span with a few tags, both posted as binary
+ * Thrift to a local {@link StandInReceiver} collector, with the same queue size and flush interval. JMH reports
+ * the time per span on the calling thread, and as secondary results the totals of {@link Work} over the
+ * measurement iterations: the CPU time and allocation on the calling thread and on the tracer's background
+ * threads, picked by name, and the spans and bytes on the wire. Divided by the spans emitted, they give the cost
+ * per span. Run it with '-prof gc' for the GC side.
+ * <p>
+ * Unthrottled, the reporters fall behind and drop spans, which then cost no sending, and on few cores the
+ * background threads slow the calling thread down. With a span rate both reporters keep up with, the per span
+ * numbers compare the same work; the JMH score is then the pacing interval and says nothing.
+ *
+ * @author kearls
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InstrumentationBenchmark {
+    private static final int FLUSH_INTERVAL = 100;
+    private static final int QUEUE_SIZE = 10000;
+    //Paced spans go in bursts of this long, a park per span would cost more CPU than the span
+    private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long RECEIVER_IDLE_TIMEOUT = 1000L;
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Param({ "JAEGER_OPENTRACING", "ZIPKIN_OPENTRACING" })
+    private INSTRUMENTATION_TYPE instrumentation;
+
+    //Spans per second offered, 0 for as many as the calling thread can start
+    @Param({ "0", "5000" })
+    private int spansPerSecond;
+
+    private StandInReceiver.HTTP receiver;
+    private ConcurrentStatsReporter statsReporter;
+    private Tracer tracer;
+    private AutoCloseable closer;
+    private final LongAdder emitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private long intervalNanos;
+    private long nextNanos;
+
+    /*
+     * Work of an iteration, the background threads' once the receiver got the spans sent or stopped getting any.
+     * CPU in nanoseconds, allocation and wire in bytes. Public fields are JMH counters, summed over the iterations.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Work {
+        public long emitted;
+        public long received;
+        public long dropped;
+        public long bytes;
+        public long callerCpu;
+        public long callerAllocated;
+        public long backgroundCpu;
+        public long backgroundAllocated;
+        private InstrumentationBenchmark benchmark;
+        //Fixtures of a thread scoped state run on the benchmark thread
+        private long callerThread;
+        private Usage before;
+        private long emittedBefore;
+        private long receivedBefore;
+        private long droppedBefore;
+        private long bytesBefore;
+
+        @Setup(Level.Iteration)
+        public void startIteration(InstrumentationBenchmark benchmark) {
+            this.benchmark = benchmark;
+            callerThread = Thread.currentThread().getId();
+            before = Usage.of(callerThread);
+            emittedBefore = benchmark.emitted.sum();
+            receivedBefore = benchmark.receiver.getSpans();
+            droppedBefore = benchmark.dropped();
+            bytesBefore = benchmark.receiver.getBytes();
+        }
+
+        @TearDown(Level.Iteration)
+        public void endIteration() throws InterruptedException {
+            Usage caller = Usage.of(callerThread).minus(before);
+            benchmark.awaitReceiver();
+            Usage background = Usage.of(callerThread).minus(before);
+            emitted = benchmark.emitted.sum() - emittedBefore;
+            received = benchmark.receiver.getSpans() - receivedBefore;
+            dropped = benchmark.dropped() - droppedBefore;
+            bytes = benchmark.receiver.getBytes() - bytesBefore;
+            callerCpu = caller.callerCpu;
+            callerAllocated = caller.callerAllocated;
+            backgroundCpu = background.backgroundCpu;
+            backgroundAllocated = background.backgroundAllocated;
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        receiver = new StandInReceiver.HTTP();
+        JaegerAgentConf agent = JaegerAgentConf.builder()
+                .sender(JaegerAgentConf.SENDER_TYPE.HTTP)
+                .collectorUrl(receiver.getUrl())
+                .packetSize(0)
+                .queueSize(QUEUE_SIZE)
+                .flushInterval(FLUSH_INTERVAL)
+                .samplingRate(1.0)
+                .build();
+        statsReporter = new ConcurrentStatsReporter();
+        switch (instrumentation) {
+            case ZIPKIN_OPENTRACING:
+                AsyncReporter<zipkin.Span> reporter = ZipkinOpenTracing.createReporter(agent, statsReporter);
+                tracer = ZipkinOpenTracing.createTracer(agent, "qe-benchmark", reporter);
+                //Closing alone drops the spans queued
+                closer = () -> {
+                    reporter.flush();
+                    reporter.close();
+                };
+                break;
+            case JAEGER_OPENTRACING:
+            default:
+                com.uber.jaeger.Tracer jaegerTracer = JaegerOpenTracing.createTracer(agent, "qe-benchmark",
+                        statsReporter);
+                tracer = jaegerTracer;
+                closer = jaegerTracer::close;
+        }
+        intervalNanos = spansPerSecond == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / spansPerSecond;
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        nextNanos = System.nanoTime();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        closer.close();
+        receiver.close();
+    }
+
+    //Until the receiver got every span not dropped, or none for the idle timeout
+    private void awaitReceiver() throws InterruptedException {
+        long received = receiver.getSpans();
+        long idleSince = System.currentTimeMillis();
+        while (received < emitted.sum() - dropped()
+                && System.currentTimeMillis() - idleSince < RECEIVER_IDLE_TIMEOUT) {
+            Thread.sleep(FLUSH_INTERVAL / 10);
+            if (receiver.getSpans() != received) {
+                received = receiver.getSpans();
+                idleSince = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private long dropped() {
+        return statsReporter.getCounter(ConcurrentStatsReporter.REPORTER_DROPPED) + rejected.sum();
+    }
+
+    @Benchmark
+    public Span span(Work work) {
+        if (intervalNanos > 0) {
+            //Sleeps past the time of this span, the burst behind it goes right away
+            nextNanos += intervalNanos;
+            long wait = nextNanos - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait + BURST_NANOS);
+            }
+        }
+        Span span = tracer.buildSpan("span")
+                .withTag("http.method", "GET")
+                .withTag("http.status_code", 200)
+                .withTag("error", false)
+                .start();
+        emitted.increment();
+        try {
+            span.finish();
+        } catch (IllegalStateException ex) {
+            //Reporter queue full
+            rejected.increment();
+        }
+        return span;
+    }
+
+    /*
+     * CPU nanoseconds and bytes allocated by the calling thread and by the live tracer threads. Threads which ended
+     * in between are not counted, the tracers keep theirs for their lifetime.
+     */
+    private static class Usage {
+        private long callerCpu;
+        private long callerAllocated;
+        private long backgroundCpu;
+        private long backgroundAllocated;
+
+        //The Jaeger reporter and its flush timer, or the zipkin AsyncReporter, whose thread name has the sender
+        private static boolean tracerThread(String name) {
+            return name.equals(FlushableReporter.THREAD_NAME) || name.equals(FlushableReporter.TIMER_THREAD_NAME)
+                    || name.startsWith("AsyncReporter(");
+        }
+
+        private static Usage of(long callerThread) {
+            long[] all = THREADS.getAllThreadIds();
+            ThreadInfo[] infos = THREADS.getThreadInfo(all);
+            long[] ids = new long[all.length];
+            int count = 0;
+            for (int index = 0; index < all.length; index++) {
+                //Null for a thread which ended since listed
+                if (all[index] == callerThread
+                        || (infos[index] != null && tracerThread(infos[index].getThreadName()))) {
+                    ids[count++] = all[index];
+                }
+            }
+            ids = Arrays.copyOf(ids, count);
+            long[] cpu = THREADS.getThreadCpuTime(ids);
+            long[] allocated = THREADS.getThreadAllocatedBytes(ids);
+            Usage usage = new Usage();
+            for (int index = 0; index < ids.length; index++) {
+                //-1 for a thread which ended since listed
+                if (cpu[index] < 0 || allocated[index] < 0) {
+                    continue;
+                }
+                if (ids[index] == callerThread) {
+                    usage.callerCpu += cpu[index];
+                    usage.callerAllocated += allocated[index];
+                } else {
+                    usage.backgroundCpu += cpu[index];
+                    usage.backgroundAllocated += allocated[index];
+                }
+            }
+            return usage;
+        }
+
+        private Usage minus(Usage earlier) {
+            Usage delta = new Usage();
+            delta.callerCpu = callerCpu - earlier.callerCpu;
+            delta.callerAllocated = callerAllocated - earlier.callerAllocated;
+            delta.backgroundCpu = backgroundCpu - earlier.backgroundCpu;
+            delta.backgroundAllocated = backgroundAllocated - earlier.backgroundAllocated;
+            return delta;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.apm.qe.model.QECarrier;
+import org.hawkular.apm.qe.model.QETracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.uber.jaeger.reporters.NoopReporter;
+import com.uber.jaeger.samplers.ConstSampler;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMap;
+import io.opentracing.propagation.TextMapExtractAdapter;
+import io.opentracing.propagation.TextMapInjectAdapter;
+
+/**
+ * Cost of one propagation hop, inject then extract through {@link QETracer}, with 0 to 20 baggage items. A
+ * {@link QECarrier} cleared and reused for every hop is compared with a new map wrapped in the OpenTracing
+ * adapters, as instrumentation usually does. HTTP_HEADERS URL encodes the values, TEXT_MAP does not.
+ *
+ * Run with '-prof gc' to get the allocation rate.
+ *
+ * @author kearls
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PropagationBenchmark {
+    @Param({ "0", "1", "5", "20" })
+    private int baggageCount;
+
+    @Param({ "TEXT_MAP", "HTTP_HEADERS" })
+    private String format;
+
+    private com.uber.jaeger.Tracer jaegerTracer;
+    private QETracer qeTracer;
+    private Format<TextMap> propagationFormat;
+    private SpanContext context;
+    private QECarrier carrier = new QECarrier();
+
+    @Setup
+    public void setup() {
+        jaegerTracer = new com.uber.jaeger.Tracer.Builder("qe-benchmark", new NoopReporter(), new ConstSampler(true))
+                .build();
+        qeTracer = new QETracer(jaegerTracer);
+        propagationFormat = "TEXT_MAP".equals(format) ? Format.Builtin.TEXT_MAP : Format.Builtin.HTTP_HEADERS;
+        Span span = qeTracer.buildSpan("benchmark").start();
+        for (int index = 0; index < baggageCount; index++) {
+            span.setBaggageItem("baggage-" + index, "value " + index);
+        }
+        context = span.context();
+    }
+
+    @TearDown
+    public void tearDown() {
+        jaegerTracer.close();
+    }
+
+    @Benchmark
+    public SpanContext reusedCarrier() {
+        qeTracer.inject(context, propagationFormat, carrier.clear());
+        return qeTracer.extract(propagationFormat, carrier);
+    }
+
+    @Benchmark
+    public SpanContext mapCarrier() {
+        Map<String, String> headers = new HashMap<String, String>();
+        qeTracer.inject(context, propagationFormat, new TextMapInjectAdapter(headers));
+        return qeTracer.extract(propagationFormat, new TextMapExtractAdapter(headers));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.apm.qe.model.conf.JaegerAgentConf;
+import org.hawkular.apm.qe.tracer.ConcurrentStatsReporter;
+import org.hawkular.apm.qe.tracer.JaegerOpenTracing;
+import org.hawkular.apm.qe.tracer.SpanIds;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.uber.jaeger.metrics.Metrics;
+import com.uber.jaeger.metrics.StatsFactoryImpl;
+import com.uber.jaeger.reporters.NoopReporter;
+import com.uber.jaeger.samplers.Sampler;
+
+import io.opentracing.Span;
+
+/**
+ * Cost of the sampling decision for each sampler of {@link JaegerOpenTracing#createSampler}, alone and as part
+ * of a root span, from several request threads. For root spans JMH also reports, as secondary results of
+ * {@link Traces}, the request rate reached and the rate of traces actually sampled, which for the rate limiting
+ * samplers should not depend on the request rate. The remote sampler polls a local
+ * {@link StandInStrategyServer}.
+ *
+ * @author kearls
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class SamplerBenchmark {
+    private static final double SAMPLING_RATE = 0.001;
+    private static final int MAX_TRACES_PER_SECOND = 100;
+    private static final double LOWER_BOUND = 10.0;
+    private static final long STRATEGY_TIMEOUT = 10000L;
+
+    @Param({ "PROBABILISTIC", "RATE_LIMITING", "GUARANTEED_THROUGHPUT", "REMOTE" })
+    private JaegerAgentConf.SAMPLER_TYPE sampler;
+
+    private StandInStrategyServer strategyServer;
+    private Sampler samplerObj;
+    private com.uber.jaeger.Tracer tracer;
+
+    //Root spans started and sampled by a thread, JMH counters turned into rates per second summed over threads
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Traces {
+        public long requests;
+        public long sampled;
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        JaegerAgentConf.JaegerAgentConfBuilder agent = JaegerAgentConf.builder()
+                .sampler(sampler)
+                .samplingRate(SAMPLING_RATE)
+                .maxTracesPerSecond(MAX_TRACES_PER_SECOND)
+                .lowerBound(LOWER_BOUND);
+        if (sampler == JaegerAgentConf.SAMPLER_TYPE.REMOTE) {
+            strategyServer = new StandInStrategyServer(SAMPLING_RATE);
+            //Samples everything until the strategy is in
+            agent.samplingRate(1.0).samplingServer(strategyServer.getHostPort());
+        }
+        samplerObj = JaegerOpenTracing.createSampler(agent.build(), "qe-benchmark",
+                new Metrics(new StatsFactoryImpl(new ConcurrentStatsReporter())));
+        if (strategyServer != null) {
+            awaitStrategy();
+        }
+        tracer = new com.uber.jaeger.Tracer.Builder("qe-benchmark", new NoopReporter(), samplerObj).build();
+    }
+
+    private void awaitStrategy() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STRATEGY_TIMEOUT;
+        while (!Double.valueOf(SAMPLING_RATE).equals(samplerObj.getTags().get("sampler.param"))) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("No strategy from " + strategyServer.getHostPort());
+            }
+            Thread.sleep(10L);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracer.close();
+        if (strategyServer != null) {
+            strategyServer.close();
+        }
+    }
+
+    @Benchmark
+    public boolean decision() {
+        return samplerObj.isSampled(ThreadLocalRandom.current().nextLong());
+    }
+
+    @Benchmark
+    public Span rootSpan(Traces traces) {
+        Span span = tracer.buildSpan("request").start();
+        span.finish();
+        traces.requests++;
+        if (SpanIds.sampled(span.context())) {
+            traces.sampled++;
+        }
+        return span;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hawkular.apm.qe.model.conf.JaegerAgentConf;
+import org.hawkular.apm.qe.tracer.ConcurrentStatsReporter;
+import org.hawkular.apm.qe.tracer.JaegerOpenTracing;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.uber.jaeger.metrics.Metrics;
+import com.uber.jaeger.metrics.StatsFactoryImpl;
+import com.uber.jaeger.reporters.RemoteReporter;
+import com.uber.jaeger.samplers.ConstSampler;
+
+import io.opentracing.Span;
+
+/**
+ * Same workload, a sampled span with a few tags, through each sender transport to a local {@link StandInReceiver}.
+ * JMH reports the span throughput, and as secondary results the totals of {@link Wire} over the measurement
+ * iterations: what reached the receiver, spans, batches and bytes on the wire, and the loss, split into spans
+ * dropped by the reporter queue, send failures and spans that never arrived.
+ *
+ * @author kearls
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SenderBenchmark {
+    private static final int FLUSH_INTERVAL = 100;
+    private static final int QUEUE_SIZE = 10000;
+    private static final long RECEIVER_IDLE_TIMEOUT = 1000L;
+
+    @Param({ "UDP", "HTTP" })
+    private JaegerAgentConf.SENDER_TYPE sender;
+
+    @Param({ "0", "8192" })
+    private int packetSize;
+
+    private StandInReceiver receiver;
+    private ConcurrentStatsReporter statsReporter;
+    private com.uber.jaeger.Tracer tracer;
+    private final LongAdder emitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /*
+     * Spans and bytes of an iteration, once the receiver got them all or stopped getting any. Public fields are JMH
+     * counters, summed over the iterations. A span still in the sender's buffer at the end of an iteration counts
+     * as lost in it and as received in the next.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Wire {
+        public long emitted;
+        public long received;
+        public long batches;
+        public long bytes;
+        public long dropped;
+        public long failed;
+        public long lost;
+        private SenderBenchmark benchmark;
+        private long emittedBefore;
+        private long receivedBefore;
+        private long batchesBefore;
+        private long bytesBefore;
+        private long droppedBefore;
+        private long failedBefore;
+
+        @Setup(Level.Iteration)
+        public void startIteration(SenderBenchmark benchmark) {
+            this.benchmark = benchmark;
+            emittedBefore = benchmark.emitted.sum();
+            receivedBefore = benchmark.receiver.getSpans();
+            batchesBefore = benchmark.receiver.getBatches();
+            bytesBefore = benchmark.receiver.getBytes();
+            droppedBefore = benchmark.dropped();
+            failedBefore = benchmark.failed();
+        }
+
+        @TearDown(Level.Iteration)
+        public void endIteration() throws InterruptedException {
+            benchmark.awaitReceiver();
+            emitted = benchmark.emitted.sum() - emittedBefore;
+            received = benchmark.receiver.getSpans() - receivedBefore;
+            batches = benchmark.receiver.getBatches() - batchesBefore;
+            bytes = benchmark.receiver.getBytes() - bytesBefore;
+            dropped = benchmark.dropped() - droppedBefore;
+            failed = benchmark.failed() - failedBefore;
+            lost = emitted - dropped - failed - received;
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        JaegerAgentConf.JaegerAgentConfBuilder agent = JaegerAgentConf.builder()
+                .sender(sender)
+                .host("localhost")
+                .packetSize(packetSize)
+                .sendBufferSize(0);
+        if (sender == JaegerAgentConf.SENDER_TYPE.UDP) {
+            receiver = new StandInReceiver.UDP(8 * 1024 * 1024);
+            agent.port(receiver.getPort());
+        } else {
+            StandInReceiver.HTTP http = new StandInReceiver.HTTP();
+            receiver = http;
+            agent.collectorUrl(http.getUrl());
+        }
+        statsReporter = new ConcurrentStatsReporter();
+        RemoteReporter reporter = new RemoteReporter(JaegerOpenTracing.createSender(agent.build(), statsReporter),
+                FLUSH_INTERVAL, QUEUE_SIZE, new Metrics(new StatsFactoryImpl(statsReporter)));
+        tracer = new com.uber.jaeger.Tracer.Builder("qe-benchmark", reporter, new ConstSampler(true))
+                .withStatsReporter(statsReporter)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        //Closing the reporter flushes the queue
+        tracer.close();
+        receiver.close();
+    }
+
+    //Until the receiver got every span sent, or none for the idle timeout, the others lost on the wire
+    private void awaitReceiver() throws InterruptedException {
+        long received = receiver.getSpans();
+        long idleSince = System.currentTimeMillis();
+        while (received < emitted.sum() - dropped() - failed()
+                && System.currentTimeMillis() - idleSince < RECEIVER_IDLE_TIMEOUT) {
+            Thread.sleep(FLUSH_INTERVAL / 10);
+            if (receiver.getSpans() != received) {
+                received = receiver.getSpans();
+                idleSince = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private long dropped() {
+        return statsReporter.getCounter(ConcurrentStatsReporter.REPORTER_DROPPED) + rejected.sum();
+    }
+
+    private long failed() {
+        return statsReporter.getCounter(ConcurrentStatsReporter.REPORTER_FAILURE);
+    }
+
+    @Benchmark
+    public Span send(Wire wire) {
+        Span span = tracer.buildSpan("send")
+                .withTag("http.method", "GET")
+                .withTag("http.status_code", 200)
+                .withTag("error", false)
+                .start();
+        emitted.increment();
+        try {
+            span.finish();
+        } catch (IllegalStateException ex) {
+            //Reporter queue full
+            rejected.increment();
+        }
+        return span;
+    }
+}
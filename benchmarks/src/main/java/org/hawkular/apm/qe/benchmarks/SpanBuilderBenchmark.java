@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.apm.qe.model.QESpanBuilder;
+import org.hawkular.apm.qe.model.QETracer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.uber.jaeger.reporters.NoopReporter;
+import com.uber.jaeger.samplers.ConstSampler;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+
+/**
+ * Cost of the {@link QETracer} wrapper compared with the bare Jaeger tracer, for the whole span life cycle:
+ * build, start, setTag and finish. Spans are sampled and handed to a no-op reporter, so the numbers do not
+ * include any transport.
+ *
+ * Run with '-prof gc' to get the allocation rate.
+ *
+ * @author kearls
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpanBuilderBenchmark {
+    @Param({ "0", "5", "50" })
+    private int tagCount;
+
+    private String[] tagNames;
+    private String operation = "benchmark";
+    private com.uber.jaeger.Tracer jaegerTracer;
+    private QETracer qeTracer;
+
+    @Setup
+    public void setup() {
+        tagNames = new String[tagCount];
+        for (int index = 0; index < tagCount; index++) {
+            tagNames[index] = "tag-" + index;
+        }
+        jaegerTracer = new com.uber.jaeger.Tracer.Builder("qe-benchmark", new NoopReporter(), new ConstSampler(true))
+                .build();
+        qeTracer = new QETracer(jaegerTracer);
+    }
+
+    @TearDown
+    public void tearDown() {
+        jaegerTracer.close();
+    }
+
+    //Same mix of tag types for both tracers: string, number and boolean
+    private Tracer.SpanBuilder withTags(Tracer.SpanBuilder builder) {
+        for (int index = 0; index < tagCount; index++) {
+            switch (index % 3) {
+                case 0:
+                    builder.withTag(tagNames[index], "value");
+                    break;
+                case 1:
+                    builder.withTag(tagNames[index], index);
+                    break;
+                default:
+                    builder.withTag(tagNames[index], true);
+                    break;
+            }
+        }
+        return builder;
+    }
+
+    //Same tags through the primitive overloads of QESpanBuilder, no boxing
+    private QESpanBuilder withTypedTags(QESpanBuilder builder) {
+        for (int index = 0; index < tagCount; index++) {
+            switch (index % 3) {
+                case 0:
+                    builder.withTag(tagNames[index], "value");
+                    break;
+                case 1:
+                    builder.withTag(tagNames[index], (long) index);
+                    break;
+                default:
+                    builder.withTag(tagNames[index], true);
+                    break;
+            }
+        }
+        return builder;
+    }
+
+    private Span lifecycle(Tracer tracer) {
+        Span span = withTags(tracer.buildSpan(operation)).start();
+        span.setTag("status", 200);
+        span.finish();
+        return span;
+    }
+
+    @Benchmark
+    public Span jaegerStart() {
+        return withTags(jaegerTracer.buildSpan(operation)).start();
+    }
+
+    @Benchmark
+    public Span qeStart() {
+        return withTags(qeTracer.buildSpan(operation)).start();
+    }
+
+    @Benchmark
+    public Span jaegerLifecycle() {
+        return lifecycle(jaegerTracer);
+    }
+
+    @Benchmark
+    public Span qeLifecycle() {
+        return lifecycle(qeTracer);
+    }
+
+    @Benchmark
+    public Span qeTypedLifecycle() {
+        Span span = withTypedTags(qeTracer.buildSpan(operation)).start();
+        span.setTag("status", 200);
+        span.finish();
+        return span;
+    }
+}
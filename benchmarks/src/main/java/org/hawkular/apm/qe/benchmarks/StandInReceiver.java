@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TMemoryInputTransport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.uber.jaeger.agent.thrift.Agent;
+import com.uber.jaeger.reporters.protocols.TUDPTransport;
+
+/**
+ * Local stand-in for an agent or a collector: receives span batches, counts spans and bytes on the wire and
+ * throws them away.
+ *
+ * @author kearls
+ */
+public abstract class StandInReceiver implements AutoCloseable {
+    protected final LongAdder spans = new LongAdder();
+    protected final LongAdder bytes = new LongAdder();
+    protected final LongAdder batches = new LongAdder();
+
+    public abstract int getPort();
+
+    //No checked exception, an interrupt while closing is kept as the interrupt flag
+    @Override
+    public abstract void close();
+
+    public long getSpans() {
+        return spans.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    //Agent on UDP, one compact Thrift emitZipkinBatch call per datagram
+    public static class UDP extends StandInReceiver {
+        private final DatagramSocket socket;
+        private final Thread receiver;
+
+        public UDP(int receiveBufferSize) throws IOException {
+            socket = new DatagramSocket(null);
+            socket.setReceiveBufferSize(receiveBufferSize);
+            socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            receiver = new Thread(this::receive, "stand-in-agent");
+            receiver.setDaemon(true);
+            receiver.start();
+        }
+
+        private void receive() {
+            byte[] buffer = new byte[TUDPTransport.MAX_PACKET_SIZE];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            Agent.emitZipkinBatch_args batch = new Agent.emitZipkinBatch_args();
+            while (!socket.isClosed()) {
+                try {
+                    packet.setLength(buffer.length);
+                    socket.receive(packet);
+                    TProtocol protocol = new TCompactProtocol(
+                            new TMemoryInputTransport(buffer, 0, packet.getLength()));
+                    protocol.readMessageBegin();
+                    batch.read(protocol);
+                    spans.add(batch.getSpansSize());
+                    bytes.add(packet.getLength());
+                    batches.increment();
+                } catch (IOException | TException ex) {
+                    //Closed
+                }
+            }
+        }
+
+        @Override
+        public int getPort() {
+            return socket.getLocalPort();
+        }
+
+        @Override
+        public void close() {
+            socket.close();
+            try {
+                receiver.join();
+            } catch (InterruptedException ex) {
+                //The receiver stops on its own with the socket closed
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    //Collector on HTTP, a binary Thrift list of spans per request
+    public static class HTTP extends StandInReceiver {
+        private final HttpServer server;
+
+        public HTTP() throws IOException {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.createContext("/api/v1/spans", this::handle);
+            server.start();
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            try (InputStream in = exchange.getRequestBody()) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    body.write(buffer, 0, read);
+                }
+            }
+            try {
+                TProtocol protocol = new TBinaryProtocol(new TMemoryInputTransport(body.toByteArray()));
+                spans.add(protocol.readListBegin().size);
+                bytes.add(body.size());
+                batches.increment();
+                exchange.sendResponseHeaders(202, -1);
+            } catch (TException ex) {
+                exchange.sendResponseHeaders(400, -1);
+            }
+            exchange.close();
+        }
+
+        public String getUrl() {
+            return "http://localhost:" + getPort() + "/api/v1/spans";
+        }
+
+        @Override
+        public int getPort() {
+            return server.getAddress().getPort();
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+        }
+    }
+}
@@ -17,7 +17,10 @@
 package org.hawkular.apm.qe;
 
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.RandomUtils;
 import org.hawkular.apm.qe.model.conf.JaegerAgentConf;
@@ -25,6 +28,7 @@ import org.hawkular.apm.qe.model.conf.JaegerConf;
 import org.hawkular.apm.qe.model.conf.JaegerServerConf;
 import org.hawkular.apm.qe.tracer.ITracer;
 import org.hawkular.apm.qe.tracer.JaegerOpenTracing;
+import org.hawkular.apm.qe.tracer.ZipkinOpenTracing;
 
 import com.uber.jaeger.rest.JaegerRestClient;
 
@@ -36,13 +40,42 @@ public class JaegerQEBase {
     private static Map<String, String> evs = System.getenv();
     private static Integer JAEGER_AGENT_FLUSH_INTERVAL = new Integer(evs.getOrDefault("JAEGER_AGENT_FLUSH_INTERVAL",
             "100"));
+    private static Integer JAEGER_AGENT_FLUSH_TIMEOUT = new Integer(evs.getOrDefault("JAEGER_AGENT_FLUSH_TIMEOUT",
+            "10000"));
     private static Integer JAEGER_AGENT_PACKET_SIZE = new Integer(evs.getOrDefault("JAEGER_AGENT_PACKET_SIZE", "0"));
     private static Integer JAEGER_AGENT_QUEUE_SIZE = new Integer(evs.getOrDefault("JAEGER_AGENT_QUEUE_SIZE", "50"));
     private static Double JAEGER_AGENT_SAMPLING_RATE = new Double(
             evs.getOrDefault("JAEGER_AGENT_SAMPLING_RATE", "1.0"));
+    private static JaegerAgentConf.SAMPLER_TYPE JAEGER_AGENT_SAMPLER = JaegerAgentConf.SAMPLER_TYPE.valueOf(
+            evs.getOrDefault("JAEGER_AGENT_SAMPLER", "PROBABILISTIC"));
+    private static Integer JAEGER_AGENT_MAX_TRACES_PER_SECOND = new Integer(evs.getOrDefault(
+            "JAEGER_AGENT_MAX_TRACES_PER_SECOND", "100"));
+    private static Double JAEGER_AGENT_SAMPLING_LOWER_BOUND = new Double(evs.getOrDefault(
+            "JAEGER_AGENT_SAMPLING_LOWER_BOUND", "1.0"));
     private static Integer JAEGER_AGENT_PORT = new Integer(evs.getOrDefault("JAEGER_AGENT_PORT", "5775"));
+    //Comma separated host:port list, spans are sharded over the agents instead of going to JAEGER_AGENT_PORT
+    private static List<String> JAEGER_AGENTS = Arrays.stream(evs.getOrDefault("JAEGER_AGENTS", "").split(","))
+            .map(String::trim)
+            .filter(agent -> !agent.isEmpty())
+            .collect(Collectors.toList());
+    private static JaegerAgentConf.SENDER_TYPE JAEGER_AGENT_SENDER = JaegerAgentConf.SENDER_TYPE.valueOf(
+            evs.getOrDefault("JAEGER_AGENT_SENDER", "UDP"));
+    private static Integer JAEGER_AGENT_SEND_BUFFER_SIZE = new Integer(evs.getOrDefault(
+            "JAEGER_AGENT_SEND_BUFFER_SIZE", "0"));
     private static String JAEGER_SERVER_HOST = evs.getOrDefault("JAEGER_SERVER_HOST", "localhost");
+    private static String JAEGER_COLLECTOR_URL = evs.getOrDefault("JAEGER_COLLECTOR_URL",
+            "http://" + JAEGER_SERVER_HOST + ":9411/api/v1/spans");
+    private static String JAEGER_SAMPLING_SERVER = evs.getOrDefault("JAEGER_SAMPLING_SERVER",
+            JAEGER_SERVER_HOST + ":5778");
     private static Integer JAEGER_SERVER_REST_PORT = new Integer(evs.getOrDefault("JAEGER_SERVER_REST_PORT", "16686"));
+    private static Integer JAEGER_SERVER_QUERY_TIMEOUT = new Integer(evs.getOrDefault("JAEGER_SERVER_QUERY_TIMEOUT",
+            "30000"));
+    private static Integer JAEGER_SERVER_QUERY_LIMIT = new Integer(evs.getOrDefault("JAEGER_SERVER_QUERY_LIMIT",
+            "100000"));
+    private static Integer JAEGER_SERVER_QUERY_CONCURRENCY = new Integer(evs.getOrDefault(
+            "JAEGER_SERVER_QUERY_CONCURRENCY", "16"));
+    private static Integer JAEGER_SERVER_METADATA_TTL = new Integer(evs.getOrDefault("JAEGER_SERVER_METADATA_TTL",
+            "10000"));
     private static String SERVICE_NAME = evs.getOrDefault("SERVICE_NAME", "qe-automation");
 
     public enum INSTRUMENTATION_TYPE {
@@ -53,15 +86,28 @@ public class JaegerQEBase {
     private static JaegerAgentConf jaegerAgentConf = JaegerAgentConf.builder()
             .host(JAEGER_SERVER_HOST)
             .port(JAEGER_AGENT_PORT)
+            .agents(JAEGER_AGENTS)
             .packetSize(JAEGER_AGENT_PACKET_SIZE)
             .queueSize(JAEGER_AGENT_QUEUE_SIZE)
+            .sampler(JAEGER_AGENT_SAMPLER)
             .samplingRate(JAEGER_AGENT_SAMPLING_RATE)
+            .maxTracesPerSecond(JAEGER_AGENT_MAX_TRACES_PER_SECOND)
+            .lowerBound(JAEGER_AGENT_SAMPLING_LOWER_BOUND)
+            .samplingServer(JAEGER_SAMPLING_SERVER)
             .flushInterval(JAEGER_AGENT_FLUSH_INTERVAL)
+            .flushTimeout(JAEGER_AGENT_FLUSH_TIMEOUT)
+            .sender(JAEGER_AGENT_SENDER)
+            .sendBufferSize(JAEGER_AGENT_SEND_BUFFER_SIZE)
+            .collectorUrl(JAEGER_COLLECTOR_URL)
             .build();
 
     private static JaegerServerConf jaegerServerConf = JaegerServerConf.builder()
             .host(JAEGER_SERVER_HOST)
             .restPort(JAEGER_SERVER_REST_PORT)
+            .queryTimeout(JAEGER_SERVER_QUERY_TIMEOUT)
+            .queryLimit(JAEGER_SERVER_QUERY_LIMIT)
+            .queryConcurrency(JAEGER_SERVER_QUERY_CONCURRENCY)
+            .metadataTtl(JAEGER_SERVER_METADATA_TTL)
             .protocol("http")
             .build();
 
@@ -70,7 +116,14 @@ public class JaegerQEBase {
             .agent(jaegerAgentConf)
             .serviceName(SERVICE_NAME)
             .build();
-    private static JaegerRestClient jaegerRestClient = null;
+    private static volatile JaegerRestClient jaegerRestClient = null;
+
+    static {
+        //Idle connections HttpURLConnection keeps alive per server, read once before the first connection
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(JAEGER_SERVER_QUERY_CONCURRENCY));
+        }
+    }
 
     public static JaegerConf getJaegerConf() {
         return jaegerConf;
@@ -80,6 +133,8 @@ public class JaegerQEBase {
         switch (type) {
             case JAEGER_OPENTRACING:
                 return JaegerOpenTracing.getInstance();
+            case ZIPKIN_OPENTRACING:
+                return ZipkinOpenTracing.getInstance();
             default:
                 throw new RuntimeException("Not implemented yet");
         }
@@ -87,9 +142,13 @@ public class JaegerQEBase {
 
     public static JaegerRestClient getRestClient() throws URISyntaxException {
         if (jaegerRestClient == null) {
-            jaegerRestClient = JaegerRestClient.builder()
-                    .uri(getJaegerConf().getServer().getUrl())
-                    .build();
+            synchronized (JaegerQEBase.class) {
+                if (jaegerRestClient == null) {
+                    jaegerRestClient = JaegerRestClient.builder()
+                            .uri(getJaegerConf().getServer().getUrl())
+                            .build();
+                }
+            }
         }
         return jaegerRestClient;
     }
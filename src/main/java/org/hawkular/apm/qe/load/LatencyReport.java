@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+import org.HdrHistogram.Histogram;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * Percentiles of a latency histogram recorded in microseconds, reported in milliseconds.
+ *
+ * @author kearls
+ */
+@Builder
+@Data
+@ToString
+public class LatencyReport {
+    private String name;
+    private Long count;
+    //Samples which never completed, left out of the percentiles
+    private Long missing;
+    private Double p50;
+    private Double p99;
+    private Double p999;
+    private Double max;
+
+    public static LatencyReport from(String name, Histogram histogram, long missing) {
+        return LatencyReport.builder()
+                .name(name)
+                .count(histogram.getTotalCount())
+                .missing(missing)
+                .p50(histogram.getValueAtPercentile(50.0) / 1000.0)
+                .p99(histogram.getValueAtPercentile(99.0) / 1000.0)
+                .p999(histogram.getValueAtPercentile(99.9) / 1000.0)
+                .max(histogram.getMaxValue() / 1000.0)
+                .build();
+    }
+
+    public static String header() {
+        return String.format("%-20s %8s %8s %10s %10s %10s %10s", "name", "count", "missing", "p50 ms", "p99 ms",
+                "p99.9 ms", "max ms");
+    }
+
+    //One line of a table, under header()
+    public String row() {
+        return String.format("%-20s %8d %8d %10.1f %10.1f %10.1f %10.1f", name, count, missing, p50, p99, p999,
+                max);
+    }
+}
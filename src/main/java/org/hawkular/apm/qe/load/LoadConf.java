@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * Load generation settings.
+ *
+ * @author kearls
+ */
+@Builder
+@Data
+@ToString
+public class LoadConf {
+    private String operation;
+    //Number of producer threads
+    private Integer threads;
+    //Target rate of all the threads together, spans per second. zero or null means as fast as possible
+    private Integer spansPerSecond;
+    //Run duration in milliseconds
+    private Long duration;
+    //When set, spans carry this run id and a sequence number over the whole run, see SequenceAudit
+    private String auditRunId;
+
+    public String getOperation() {
+        if (operation == null) {
+            return "load";
+        }
+        return operation;
+    }
+
+    public Integer getThreads() {
+        if (threads == null) {
+            return 1;
+        }
+        return threads;
+    }
+
+    public Integer getSpansPerSecond() {
+        if (spansPerSecond == null) {
+            return 0;
+        }
+        return spansPerSecond;
+    }
+}
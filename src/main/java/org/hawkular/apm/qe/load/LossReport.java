@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+import org.hawkular.apm.qe.model.conf.JaegerAgentConf;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * End to end loss of an audited load run, with the agent settings it ran with.
+ *
+ * @author kearls
+ */
+@Builder
+@Data
+@ToString
+public class LossReport {
+    private String runId;
+    private JaegerAgentConf.SENDER_TYPE sender;
+    private Integer packetSize;
+    private Integer queueSize;
+    private Integer flushInterval;
+    private Long emitted;
+    //Distinct sequence numbers read back
+    private Long received;
+    //Sequence numbers read back more than once
+    private Long duplicates;
+    //Sequence numbers of the run outside the emitted range
+    private Long unexpected;
+    //Runs of consecutive missing sequence numbers, and the longest one
+    private Long gaps;
+    private Long largestGap;
+    //Losses the client knows about, out of the missing spans
+    private Long clientDropped;
+    private Long clientFailed;
+
+    public long getMissing() {
+        return emitted - received;
+    }
+
+    public double getLossRatio() {
+        if (emitted == null || emitted == 0) {
+            return 0.0;
+        }
+        return (double) getMissing() / emitted;
+    }
+
+    public static String header() {
+        return String.format("%-6s %10s %9s %8s %10s %10s %10s %7s %8s %6s %8s", "sender", "packetSize",
+                "queueSize", "flush ms", "emitted", "received", "loss %", "dups", "gaps", "max", "client");
+    }
+
+    //One line of a table, under header()
+    public String row() {
+        return String.format("%-6s %10d %9d %8d %10d %10d %10.3f %7d %8d %6d %8d", sender, packetSize, queueSize,
+                flushInterval, emitted, received, getLossRatio() * 100, duplicates, gaps, largestGap,
+                clientDropped + clientFailed);
+    }
+}
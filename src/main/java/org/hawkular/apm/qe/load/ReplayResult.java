@@ -0,0 +1,49 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * Outcome of a {@link SpanReplayer} run.
+ *
+ * @author kearls
+ */
+@Builder
+@Data
+@ToString
+public class ReplayResult {
+    //Speed factor, SpanReplayer.MAX_SPEED when as fast as possible
+    private Double speed;
+    //Span start timestamp range of the replay, in microseconds
+    private Long start;
+    private Long end;
+    //Wall clock time spent replaying, in milliseconds
+    private Long elapsed;
+    private Long replayed;
+    //References to spans not in the recording, or not started yet, left out
+    private Long missingReferences;
+
+    public double getThroughput() {
+        if (elapsed == null || elapsed == 0) {
+            return 0.0;
+        }
+        return replayed * 1000.0 / elapsed;
+    }
+}
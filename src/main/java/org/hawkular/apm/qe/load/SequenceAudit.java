@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+import java.util.BitSet;
+import java.util.Map;
+
+import org.hawkular.apm.qe.model.conf.JaegerAgentConf;
+
+/**
+ * Reconciles the spans of an audited load run, see {@link LoadConf#getAuditRunId()}, with what the server
+ * returns. Spans of the run are numbered 0 to emitted - 1; feed the tags of every span read back to
+ * {@link #accept(Map)} and build the report.
+ *
+ * @author kearls
+ */
+public class SequenceAudit {
+    public static final String RUN_ID_TAG = "audit.run";
+    public static final String SEQUENCE_TAG = "audit.sequence";
+
+    private final LoadResult result;
+    private final BitSet received = new BitSet();
+    private long duplicates = 0;
+    private long foreign = 0;
+
+    public SequenceAudit(LoadResult result) {
+        this.result = result;
+    }
+
+    //Tags of a span read back, spans of other runs are ignored
+    public void accept(Map<String, Object> tags) {
+        Object runId = tags.get(RUN_ID_TAG);
+        Object sequence = tags.get(SEQUENCE_TAG);
+        if (runId == null || !runId.equals(result.getConf().getAuditRunId()) || sequence == null) {
+            return;
+        }
+        //Number from the query service, string from the agent wire format
+        long value = sequence instanceof Number ? ((Number) sequence).longValue()
+                : Long.parseLong(sequence.toString());
+        if (value < 0 || value >= result.getEmitted()) {
+            foreign++;
+        } else if (received.get((int) value)) {
+            duplicates++;
+        } else {
+            received.set((int) value);
+        }
+    }
+
+    public long getReceived() {
+        return received.cardinality();
+    }
+
+    public LossReport report(JaegerAgentConf agent) {
+        int emitted = result.getEmitted().intValue();
+        long gaps = 0;
+        long largestGap = 0;
+        int missing = received.nextClearBit(0);
+        while (missing < emitted) {
+            int next = received.nextSetBit(missing);
+            int gapEnd = next < 0 || next > emitted ? emitted : next;
+            gaps++;
+            largestGap = Math.max(largestGap, gapEnd - missing);
+            missing = received.nextClearBit(gapEnd);
+        }
+        return LossReport.builder()
+                .runId(result.getConf().getAuditRunId())
+                .sender(agent.getSender())
+                .packetSize(agent.getPacketSize())
+                .queueSize(agent.getQueueSize())
+                .flushInterval(agent.getFlushInterval())
+                .emitted(result.getEmitted())
+                .received(getReceived())
+                .duplicates(duplicates)
+                .unexpected(foreign)
+                .gaps(gaps)
+                .largestGap(largestGap)
+                .clientDropped(result.getDropped())
+                .clientFailed(result.getFailed())
+                .build();
+    }
+}
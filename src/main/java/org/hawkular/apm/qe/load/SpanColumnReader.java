@@ -0,0 +1,344 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import org.hawkular.apm.qe.model.QESpan;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Scans a store written by {@link SpanColumnWriter}. The file is memory mapped and only the footer is read when it
+ * is opened; a scan skips the blocks without the operation or the time range of its filter, then decodes the
+ * operation, start and duration columns of the others, and reads span ids and tags of the matching spans only.
+ * <pre>
+ * try (SpanColumnReader reader = new SpanColumnReader(file)) {
+ *     long slow = reader.count(SpanFilter.builder().operation("get").tagName("error").tagValue(true).build());
+ *     reader.scan(SpanFilter.all(), span -&gt; histogram.recordValue(span.getDuration()));
+ * }
+ * </pre>
+ * Safe to scan from several threads at once.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class SpanColumnReader implements AutoCloseable {
+    private final Path file;
+    private final FileChannel channel;
+    private final List<String> operations;
+    private final List<String> tagKeys;
+    private final Map<String, Integer> operationIndexes = new HashMap<String, Integer>();
+    private final Map<String, Integer> tagKeyIndexes = new HashMap<String, Integer>();
+    private final List<Block> blocks = new ArrayList<Block>();
+    private long size = 0L;
+
+    public SpanColumnReader(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer footer = readFooter();
+            operations = readStrings(footer, operationIndexes);
+            tagKeys = readStrings(footer, tagKeyIndexes);
+            readBlocks(footer);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private ByteBuffer readFooter() throws IOException {
+        long length = channel.size();
+        if (length < SpanColumns.HEADER_SIZE + SpanColumns.TRAILER_SIZE) {
+            throw new IOException("Not a span store: " + file);
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SpanColumns.HEADER_SIZE);
+        MappedByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, length - SpanColumns.TRAILER_SIZE,
+                SpanColumns.TRAILER_SIZE);
+        if (header.getInt() != SpanColumns.MAGIC || header.get() != SpanColumns.VERSION) {
+            throw new IOException("Not a span store of version " + SpanColumns.VERSION + ": " + file);
+        }
+        long footer = trailer.getLong();
+        //A store the writer did not close has no footer
+        if (trailer.getInt() != SpanColumns.MAGIC || footer < SpanColumns.HEADER_SIZE
+                || footer > length - SpanColumns.TRAILER_SIZE) {
+            throw new IOException("Span store not complete, no footer: " + file);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, footer, length - SpanColumns.TRAILER_SIZE - footer);
+    }
+
+    private static List<String> readStrings(ByteBuffer in, Map<String, Integer> indexes) {
+        int count = (int) SpanRecords.readVarint(in);
+        List<String> values = new ArrayList<String>(count);
+        for (int index = 0; index < count; index++) {
+            String value = SpanRecords.readUtf8(in);
+            values.add(value);
+            indexes.put(value, index);
+        }
+        return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Maps the blocks in as few regions as possible, each under the 2GB limit of a buffer, and slices a buffer per
+     * block out of them.
+     */
+    private void readBlocks(ByteBuffer in) throws IOException {
+        int count = (int) SpanRecords.readVarint(in);
+        List<Block> region = new ArrayList<Block>();
+        long regionStart = 0L;
+        for (int index = 0; index < count; index++) {
+            Block block = new Block();
+            block.offset = in.getLong();
+            block.length = in.getInt();
+            block.rows = in.getInt();
+            block.firstStart = in.getLong();
+            block.minStart = in.getLong();
+            block.maxStart = in.getLong();
+            for (int operations = (int) SpanRecords.readVarint(in); operations > 0; operations--) {
+                block.operations.set((int) SpanRecords.readVarint(in));
+            }
+            if (!region.isEmpty() && block.offset + block.length - regionStart > Integer.MAX_VALUE) {
+                mapRegion(region, regionStart);
+                region.clear();
+            }
+            if (region.isEmpty()) {
+                regionStart = block.offset;
+            }
+            region.add(block);
+            blocks.add(block);
+            size += block.rows;
+        }
+        if (!region.isEmpty()) {
+            mapRegion(region, regionStart);
+        }
+    }
+
+    private void mapRegion(List<Block> region, long regionStart) throws IOException {
+        Block last = region.get(region.size() - 1);
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, regionStart,
+                last.offset + last.length - regionStart);
+        for (Block block : region) {
+            ByteBuffer data = mapped.duplicate();
+            data.position((int) (block.offset - regionStart));
+            data.limit(data.position() + block.length);
+            block.data = data.slice();
+        }
+    }
+
+    //Spans in the store
+    public long size() {
+        return size;
+    }
+
+    public List<String> getOperations() {
+        return operations;
+    }
+
+    public List<String> getTagKeys() {
+        return tagKeys;
+    }
+
+    Integer tagKeyIndex(String name) {
+        return tagKeyIndexes.get(name);
+    }
+
+    /**
+     * Hands the spans matching the filter to the consumer, in the order they were written. The span handed over is
+     * reused, see {@link StoredSpan}. Returns the number of spans matched.
+     */
+    public long scan(SpanFilter filter, Consumer<StoredSpan> consumer) {
+        int operation = -1;
+        if (filter.getOperation() != null) {
+            Integer index = operationIndexes.get(filter.getOperation());
+            if (index == null) {
+                return 0L;
+            }
+            operation = index;
+        }
+        int tagKey = -1;
+        if (filter.getTagName() != null) {
+            Integer index = tagKeyIndexes.get(filter.getTagName());
+            if (index == null) {
+                return 0L;
+            }
+            tagKey = index;
+        }
+        long from = filter.getStart() == null ? Long.MIN_VALUE : filter.getStart();
+        long to = filter.getEnd() == null ? Long.MAX_VALUE : filter.getEnd();
+
+        StoredSpan span = new StoredSpan(this);
+        long matched = 0L;
+        for (Block block : blocks) {
+            if ((operation >= 0 && !block.operations.get(operation)) || block.maxStart < from
+                    || block.minStart >= to) {
+                continue;
+            }
+            matched += scan(block, operation, from, to, tagKey, filter.getTagValue(), span, consumer);
+        }
+        return matched;
+    }
+
+    private long scan(Block block, int operation, long from, long to, int tagKey, Object tagValue, StoredSpan span,
+            Consumer<StoredSpan> consumer) {
+        ByteBuffer data = block.data;
+        int[] columns = new int[SpanColumns.COLUMNS];
+        int offset = SpanColumns.BLOCK_HEADER_SIZE;
+        for (int column = 0; column < columns.length; column++) {
+            columns[column] = offset;
+            offset += data.getInt(4 + 4 * column);
+        }
+        ByteBuffer operations = column(data, columns[SpanColumns.OPERATION]);
+        ByteBuffer starts = column(data, columns[SpanColumns.START]);
+        ByteBuffer durations = column(data, columns[SpanColumns.DURATION]);
+        ByteBuffer tags = column(data, columns[SpanColumns.TAGS]);
+        //Reads the tags of a span for the tag condition
+        ByteBuffer tagsIn = data.duplicate();
+
+        long matched = 0L;
+        long start = block.firstStart;
+        for (int row = 0; row < block.rows; row++) {
+            int rowOperation = (int) SpanRecords.readVarint(operations);
+            start += SpanRecords.readZigzag(starts);
+            long duration = SpanRecords.readZigzag(durations);
+            int tagsLength = (int) SpanRecords.readVarint(tags);
+            int tagsOffset = tags.position();
+            tags.position(tagsOffset + tagsLength);
+            if ((operation >= 0 && rowOperation != operation) || start < from || start >= to) {
+                continue;
+            }
+            if (tagKey >= 0) {
+                tagsIn.position(tagsOffset);
+                Object value = tagValue(tagsIn, tagKey);
+                if (value == null || (tagValue != null && !valueEquals(value, tagValue))) {
+                    continue;
+                }
+            }
+            span.moveTo(data, rowOperation, start, duration, columns[SpanColumns.SPAN_ID] + 8 * row,
+                    columns[SpanColumns.PARENT_ID] + 8 * row, tagsOffset);
+            consumer.accept(span);
+            matched++;
+        }
+        return matched;
+    }
+
+    private static ByteBuffer column(ByteBuffer data, int offset) {
+        ByteBuffer column = data.duplicate();
+        column.position(offset);
+        return column;
+    }
+
+    //Latest value of the tag key in the tags at the position of the buffer, null if not there
+    static Object tagValue(ByteBuffer in, int tagKey) {
+        Object value = null;
+        for (int count = (int) SpanRecords.readVarint(in); count > 0; count--) {
+            if (SpanRecords.readVarint(in) == tagKey) {
+                value = SpanRecords.readValue(in);
+            } else {
+                skipValue(in);
+            }
+        }
+        return value;
+    }
+
+    private static void skipValue(ByteBuffer in) {
+        switch (in.get()) {
+            case SpanRecords.LONG_VALUE:
+                SpanRecords.readVarint(in);
+                break;
+            case SpanRecords.DOUBLE_VALUE:
+                in.position(in.position() + 8);
+                break;
+            case SpanRecords.BOOLEAN_VALUE:
+                in.get();
+                break;
+            default:
+                int length = (int) SpanRecords.readVarint(in);
+                in.position(in.position() + length);
+        }
+    }
+
+    private static boolean valueEquals(Object value, Object expected) {
+        if (value instanceof Number && expected instanceof Number) {
+            if (value instanceof Double || expected instanceof Double || expected instanceof Float) {
+                return ((Number) value).doubleValue() == ((Number) expected).doubleValue();
+            }
+            return ((Number) value).longValue() == ((Number) expected).longValue();
+        }
+        return Objects.equals(value, expected);
+    }
+
+    public long count(SpanFilter filter) {
+        return scan(filter, span -> {
+        });
+    }
+
+    /**
+     * Offline copies of the spans matching the filter, linked to their parents among them. For filters leaving out
+     * most of the store, the rest is better scanned.
+     */
+    public List<QESpan> list(SpanFilter filter) {
+        List<QESpan> qeSpans = new ArrayList<QESpan>();
+        List<String> parentIds = new ArrayList<String>();
+        scan(filter, span -> {
+            qeSpans.add(span.toQESpan());
+            parentIds.add(span.getParentId());
+        });
+        Map<String, QESpan> spansById = new HashMap<String, QESpan>(qeSpans.size() * 4 / 3 + 1);
+        for (QESpan qeSpan : qeSpans) {
+            if (qeSpan.getSpanId() != null) {
+                spansById.put(qeSpan.getSpanId(), qeSpan);
+            }
+        }
+        for (int index = 0; index < qeSpans.size(); index++) {
+            QESpan parent = parentIds.get(index) == null ? null : spansById.get(parentIds.get(index));
+            if (parent != null) {
+                qeSpans.get(index).setParent(parent);
+            }
+        }
+        return qeSpans;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        _logger.debug("Closed {}, {} spans in {} blocks", file, size, blocks.size());
+    }
+
+    private static class Block {
+        private long offset;
+        private int length;
+        private int rows;
+        private long firstStart;
+        private long minStart;
+        private long maxStart;
+        private final BitSet operations = new BitSet();
+        private ByteBuffer data;
+    }
+}
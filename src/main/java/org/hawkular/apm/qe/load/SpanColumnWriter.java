@@ -0,0 +1,255 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.QETags;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes spans, typically fetched with {@code IServer.streamSpans}, to a columnar store, see {@link SpanColumns}
+ * for the layout, to be scanned by {@link SpanColumnReader}. Only the current block of spans is held in memory, as
+ * column bytes, the spans handed in can be dropped once added.
+ * <p>
+ * Spans are linked by span id, the first parent only. FOLLOWS_FROM references and logs are not stored. Not thread
+ * safe, the footer is written on close and a store which was not closed cannot be read. A write which fails part
+ * way calls {@link #abort()} instead, so that no store is left with the spans fetched so far.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class SpanColumnWriter implements AutoCloseable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final DataOutputStream out;
+    //Bytes written so far, DataOutputStream.size() stops at 2GB
+    private long position = 0L;
+    private final Map<String, Integer> operationIndexes = new HashMap<String, Integer>();
+    private final List<String> operations = new ArrayList<String>();
+    private final Map<String, Integer> tagKeyIndexes = new HashMap<String, Integer>();
+    private final List<String> tagKeys = new ArrayList<String>();
+    private final List<BlockEntry> blocks = new ArrayList<BlockEntry>();
+
+    //Columns of the current block
+    private final ByteArrayOutputStream[] columns = new ByteArrayOutputStream[SpanColumns.COLUMNS];
+    private final DataOutputStream spanIds;
+    private final DataOutputStream parentIds;
+    //Tags of the current span, written to the TAGS column after their length
+    private final ByteArrayOutputStream tagBytes = new ByteArrayOutputStream();
+    private final DataOutputStream tagOut = new DataOutputStream(tagBytes);
+    private final BitSet blockOperations = new BitSet();
+    private int rows = 0;
+    private long firstStart;
+    private long previousStart;
+    private long minStart;
+    private long maxStart;
+    private long written = 0L;
+    private boolean aborted = false;
+
+    public SpanColumnWriter(Path file) throws IOException {
+        this.file = file;
+        for (int column = 0; column < columns.length; column++) {
+            columns[column] = new ByteArrayOutputStream();
+        }
+        spanIds = new DataOutputStream(columns[SpanColumns.SPAN_ID]);
+        parentIds = new DataOutputStream(columns[SpanColumns.PARENT_ID]);
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+        out.writeInt(SpanColumns.MAGIC);
+        out.writeByte(SpanColumns.VERSION);
+        position = SpanColumns.HEADER_SIZE;
+    }
+
+    public void add(QESpan span) {
+        try {
+            write(span);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to write span to " + file, ex);
+        }
+        written++;
+        if (rows == SpanColumns.BLOCK_ROWS) {
+            try {
+                writeBlock();
+            } catch (IOException ex) {
+                throw new IllegalStateException("Failed to write block to " + file, ex);
+            }
+        }
+    }
+
+    private void write(QESpan span) throws IOException {
+        int operation = index(operationIndexes, operations, span.getOperation());
+        SpanRecords.writeVarint(columns[SpanColumns.OPERATION], operation);
+        blockOperations.set(operation);
+
+        long start = span.getStart();
+        if (rows == 0) {
+            firstStart = start;
+            previousStart = start;
+            minStart = start;
+            maxStart = start;
+        }
+        SpanRecords.writeZigzag(columns[SpanColumns.START], start - previousStart);
+        previousStart = start;
+        minStart = Math.min(minStart, start);
+        maxStart = Math.max(maxStart, start);
+        Long duration = span.getDuration();
+        SpanRecords.writeZigzag(columns[SpanColumns.DURATION], duration == null ? 0L : duration);
+
+        spanIds.writeLong(spanId(span));
+        parentIds.writeLong(span.getParent() == null ? 0L : spanId(span.getParent()));
+
+        QETags tags = span.getQETags();
+        tagBytes.reset();
+        SpanRecords.writeVarint(tagOut, tags.size());
+        for (int index = 0; index < tags.size(); index++) {
+            SpanRecords.writeVarint(tagOut, index(tagKeyIndexes, tagKeys, tags.getName(index)));
+            SpanRecords.writeValue(tagOut, tags.getValue(index));
+        }
+        SpanRecords.writeVarint(columns[SpanColumns.TAGS], tagBytes.size());
+        tagBytes.writeTo(columns[SpanColumns.TAGS]);
+        rows++;
+    }
+
+    private static int index(Map<String, Integer> indexes, List<String> values, String value) {
+        Integer index = indexes.get(value);
+        if (index == null) {
+            index = values.size();
+            indexes.put(value, index);
+            values.add(value);
+        }
+        return index;
+    }
+
+    private static long spanId(QESpan span) {
+        return span.getSpanId() == null ? 0L : Long.parseUnsignedLong(span.getSpanId(), 16);
+    }
+
+    private void writeBlock() throws IOException {
+        int length = SpanColumns.BLOCK_HEADER_SIZE;
+        out.writeInt(rows);
+        for (ByteArrayOutputStream column : columns) {
+            out.writeInt(column.size());
+            length += column.size();
+        }
+        for (ByteArrayOutputStream column : columns) {
+            column.writeTo(out);
+            column.reset();
+        }
+        blocks.add(new BlockEntry(position, length, rows, firstStart, minStart, maxStart,
+                blockOperations.stream().toArray()));
+        position += length;
+        blockOperations.clear();
+        rows = 0;
+    }
+
+    private void writeFooter() throws IOException {
+        long footer = position;
+        writeStrings(operations);
+        writeStrings(tagKeys);
+        SpanRecords.writeVarint(out, blocks.size());
+        for (BlockEntry block : blocks) {
+            out.writeLong(block.offset);
+            out.writeInt(block.length);
+            out.writeInt(block.rows);
+            out.writeLong(block.firstStart);
+            out.writeLong(block.minStart);
+            out.writeLong(block.maxStart);
+            SpanRecords.writeVarint(out, block.operations.length);
+            for (int operation : block.operations) {
+                SpanRecords.writeVarint(out, operation);
+            }
+        }
+        out.writeLong(footer);
+        out.writeInt(SpanColumns.MAGIC);
+    }
+
+    private void writeStrings(List<String> values) throws IOException {
+        SpanRecords.writeVarint(out, values.size());
+        for (String value : values) {
+            SpanRecords.writeUtf8(out, value);
+        }
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    //Closes the store without its footer and deletes it. Does not throw, so as not to hide the failure of the write
+    public void abort() {
+        aborted = true;
+        try {
+            out.close();
+        } catch (IOException ex) {
+            _logger.debug("Exception,", ex);
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            _logger.warn("Failed to delete {}", file, ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (aborted) {
+            return;
+        }
+        try {
+            if (rows > 0) {
+                writeBlock();
+            }
+            writeFooter();
+        } finally {
+            out.close();
+        }
+        _logger.debug("Wrote {} spans in {} blocks to {}", written, blocks.size(), file);
+    }
+
+    private static class BlockEntry {
+        private final long offset;
+        private final int length;
+        private final int rows;
+        private final long firstStart;
+        private final long minStart;
+        private final long maxStart;
+        private final int[] operations;
+
+        BlockEntry(long offset, int length, int rows, long firstStart, long minStart, long maxStart,
+                int[] operations) {
+            this.offset = offset;
+            this.length = length;
+            this.rows = rows;
+            this.firstStart = firstStart;
+            this.minStart = minStart;
+            this.maxStart = maxStart;
+            this.operations = operations;
+        }
+    }
+}
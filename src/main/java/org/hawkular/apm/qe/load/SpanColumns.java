@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+/**
+ * Layout of a columnar span store, written by {@link SpanColumnWriter} and read by {@link SpanColumnReader}. A
+ * store starts with the magic number and the version, then blocks of up to {@link #BLOCK_ROWS} spans, then the
+ * footer, and ends with the position of the footer (8 bytes) and the magic number again.
+ * <p>
+ * A block is its row count and the byte length of each column (4 bytes each), then the columns one after the
+ * other:
+ * <ul>
+ * <li>OPERATION: index in the operation dictionary, per span.</li>
+ * <li>START: start as a delta from the start of the previous span of the block, the first span's from the block's
+ * first start.</li>
+ * <li>DURATION: duration.</li>
+ * <li>SPAN_ID and PARENT_ID: 8 bytes per span, 0 if unknown or a root span, so a row is found by its index.</li>
+ * <li>TAGS: per span, the byte length of its tags, so that they can be skipped, then the tag count and tags (key
+ * index in the tag key dictionary, value as in {@link SpanRecords}).</li>
+ * </ul>
+ * The footer holds the operation and the tag key dictionaries (count and strings), and an entry per block: offset
+ * (8 bytes), length and row count (4 bytes each), first, lowest and highest start (8 bytes each) and the indexes of
+ * the operations in the block, so that blocks can be skipped on operation and time range without reading them.
+ * Timestamps and durations are zigzag varints, counts, lengths and indexes unsigned varints as in
+ * {@link SpanRecords}, outside of the fixed width fields above.
+ *
+ * @author kearls
+ */
+final class SpanColumns {
+    //"QESC"
+    static final int MAGIC = 0x51455343;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 5;
+    //Footer position and magic number
+    static final int TRAILER_SIZE = 12;
+    static final int BLOCK_ROWS = 4096;
+
+    static final int OPERATION = 0;
+    static final int START = 1;
+    static final int DURATION = 2;
+    static final int SPAN_ID = 3;
+    static final int PARENT_ID = 4;
+    static final int TAGS = 5;
+    static final int COLUMNS = 6;
+    //Row count and column lengths
+    static final int BLOCK_HEADER_SIZE = 4 + 4 * COLUMNS;
+
+    private SpanColumns() {
+
+    }
+}
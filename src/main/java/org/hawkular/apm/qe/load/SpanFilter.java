@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * Spans to scan in a {@link SpanColumnReader}, all of the conditions set. Start and end are microseconds like the
+ * span timestamps, not milliseconds like {@code Criteria}.
+ *
+ * @author kearls
+ */
+@Builder
+@Data
+@ToString
+public class SpanFilter {
+    private String operation;
+    //Spans started from start, inclusive, to end, exclusive
+    private Long start;
+    private Long end;
+    //Spans with the tag, of the value if one is set. Numbers match numbers of the same value whatever their type
+    private String tagName;
+    private Object tagValue;
+
+    public static SpanFilter all() {
+        return SpanFilter.builder().build();
+    }
+}
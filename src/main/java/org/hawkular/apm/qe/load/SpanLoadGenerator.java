@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.hawkular.apm.qe.model.QESpanBuilder;
+import org.hawkular.apm.qe.model.QETracer;
+import org.hawkular.apm.qe.tracer.ConcurrentStatsReporter;
+import org.hawkular.apm.qe.tracer.MetricsSnapshot;
+
+import io.opentracing.Span;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Emits spans through {@link QETracer} from several producer threads at a target rate, and reports how many of
+ * them the client managed to hand over to the agent.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class SpanLoadGenerator {
+    private final QETracer qeTracer;
+    private final ConcurrentStatsReporter statsReporter;
+    private final LoadConf conf;
+    //Gets every span once finished
+    private final Consumer<Span> finishedListener;
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public SpanLoadGenerator(QETracer qeTracer, ConcurrentStatsReporter statsReporter, LoadConf conf) {
+        this(qeTracer, statsReporter, conf, span -> {
+        });
+    }
+
+    public SpanLoadGenerator(QETracer qeTracer, ConcurrentStatsReporter statsReporter, LoadConf conf,
+            Consumer<Span> finishedListener) {
+        this.qeTracer = qeTracer;
+        this.statsReporter = statsReporter;
+        this.conf = conf;
+        this.finishedListener = finishedListener;
+    }
+
+    public LoadResult run() throws InterruptedException {
+        _logger.info("Starting load {}", conf);
+        MetricsSnapshot before = statsReporter.snapshot();
+        rejected.reset();
+        sequence.set(0L);
+
+        int threads = conf.getThreads();
+        //Pause between two spans of a single thread
+        long interval = conf.getSpansPerSecond() > 0 ? TimeUnit.SECONDS.toNanos(threads) / conf.getSpansPerSecond()
+                : 0L;
+        long start = System.currentTimeMillis() * 1000L;
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + TimeUnit.MILLISECONDS.toNanos(conf.getDuration());
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> producers = new ArrayList<Future<Long>>();
+        for (int thread = 0; thread < threads; thread++) {
+            final int threadId = thread;
+            producers.add(executor.submit(() -> produce(threadId, startNanos, interval, deadline)));
+        }
+        long emitted = 0;
+        try {
+            for (Future<Long> producer : producers) {
+                emitted += producer.get();
+            }
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Load producer failed", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        long end = System.currentTimeMillis() * 1000L;
+        MetricsSnapshot metrics = statsReporter.snapshot().delta(before);
+
+        LoadResult result = LoadResult.builder()
+                .conf(conf)
+                .start(start)
+                .end(end)
+                .elapsed(elapsed)
+                .emitted(emitted)
+                .dropped(metrics.getSpansDropped() + rejected.sum())
+                .failed(metrics.getSpansFailed())
+                .metrics(metrics)
+                .build();
+        _logger.info("Load completed, throughput: {} spans/s, {}", String.format("%.1f", result.getThroughput()),
+                result);
+        return result;
+    }
+
+    private long produce(int threadId, long startNanos, long interval, long deadline) {
+        long count = 0;
+        long next = startNanos;
+        while (!Thread.currentThread().isInterrupted()) {
+            if (interval > 0) {
+                next += interval;
+                long now = System.nanoTime();
+                if (next > now) {
+                    LockSupport.parkNanos(next - now);
+                }
+            }
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+            QESpanBuilder spanBuilder = qeTracer.buildSpan(conf.getOperation())
+                    .withTag("thread", threadId)
+                    .withTag("sequence", count);
+            if (conf.getAuditRunId() != null) {
+                spanBuilder.withTag(SequenceAudit.RUN_ID_TAG, conf.getAuditRunId())
+                        .withTag(SequenceAudit.SEQUENCE_TAG, sequence.getAndIncrement());
+            }
+            Span span = spanBuilder.start();
+            try {
+                span.finish();
+                finishedListener.accept(span);
+            } catch (IllegalStateException ex) {
+                //RemoteReporter throws 'Queue full' instead of dropping, when its queue fills up between checks
+                rejected.increment();
+            }
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.QESpanListener;
+import org.hawkular.apm.qe.model.QETags;
+import org.hawkular.apm.qe.model.QETracer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Appends the spans of a {@link QETracer} to a binary recording as they finish, see {@link SpanRecords} for the
+ * layout, to be replayed by {@link SpanReplayer}. Pass it to the tracer as its listener:
+ *
+ * <pre>
+ * try (SpanRecorder recorder = new SpanRecorder(file)) {
+ *     QETracer qeTracer = new QETracer(tracer, recorder);
+ *     ...
+ * }
+ * </pre>
+ *
+ * Spans are linked by the span ids of the tracer, a span without one (a tracer other than Jaeger or zipkin) is
+ * recorded as a root. References made with a span context only, as extracted from a carrier, are not recorded.
+ * Numbers other than integers and doubles are recorded as strings. Thread safe, spans are written in the order
+ * they finish.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class SpanRecorder implements QESpanListener, AutoCloseable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final DataOutputStream out;
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+    private long previousStart = 0L;
+    private long recorded = 0L;
+
+    /**
+     * Creates the file, or appends to an existing recording. A truncated last record, as left by a recorder killed
+     * mid-write, is cut off first, so the new session starts on a record boundary.
+     */
+    public SpanRecorder(Path file) throws IOException {
+        this.file = file;
+        boolean append = Files.exists(file) && Files.size(file) > 0;
+        if (append) {
+            truncateToCompleteRecords(file);
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile(), true), BUFFER_SIZE));
+        if (append) {
+            out.writeByte(SpanRecords.SESSION);
+        } else {
+            out.writeInt(SpanRecords.MAGIC);
+            out.writeByte(SpanRecords.VERSION);
+        }
+    }
+
+    private static void truncateToCompleteRecords(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Recording over 2GB: " + file);
+            }
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            SpanRecords.checkHeader(in, file);
+            int end = SpanRecords.completeLength(in, file);
+            if (end < size) {
+                _logger.warn("Cut the truncated last record at {} of {}, {} bytes", end, file, size - end);
+                channel.truncate(end);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void finished(QESpan span) {
+        try {
+            write(span);
+            recorded++;
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to record span to " + file, ex);
+        }
+    }
+
+    private void write(QESpan span) throws IOException {
+        //Strings first, the span refers to them
+        int operation = string(span.getOperation());
+        QETags tags = span.getQETags();
+        int[] names = new int[tags.size()];
+        for (int index = 0; index < names.length; index++) {
+            names[index] = string(tags.getName(index));
+        }
+
+        out.writeByte(SpanRecords.SPAN);
+        out.writeLong(spanId(span));
+        //The parent is the first FOLLOWS_FROM span when there is no CHILD_OF one
+        List<QESpan> followsFrom = span.getFollowsFrom();
+        QESpan childOf = span.getParent();
+        if (childOf != null && !followsFrom.isEmpty() && followsFrom.get(0) == childOf) {
+            childOf = null;
+        }
+        SpanRecords.writeVarint(out, childOf == null ? 0 : 1);
+        if (childOf != null) {
+            out.writeLong(spanId(childOf));
+        }
+        SpanRecords.writeVarint(out, followsFrom.size());
+        for (QESpan follows : followsFrom) {
+            out.writeLong(spanId(follows));
+        }
+        SpanRecords.writeVarint(out, operation);
+        long start = span.getStart();
+        SpanRecords.writeZigzag(out, start - previousStart);
+        previousStart = start;
+        Long duration = span.getDuration();
+        SpanRecords.writeZigzag(out, duration == null ? 0L : duration);
+
+        SpanRecords.writeVarint(out, names.length);
+        for (int index = 0; index < names.length; index++) {
+            SpanRecords.writeVarint(out, names[index]);
+            SpanRecords.writeValue(out, tags.getValue(index));
+        }
+    }
+
+    //Index of the string, defined on first use
+    private int string(String value) throws IOException {
+        Integer index = strings.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.put(value, index);
+            out.writeByte(SpanRecords.STRING);
+            SpanRecords.writeUtf8(out, value);
+        }
+        return index;
+    }
+
+    private static long spanId(QESpan span) {
+        return span.getSpanId() == null ? 0L : Long.parseUnsignedLong(span.getSpanId(), 16);
+    }
+
+    public synchronized long getRecorded() {
+        return recorded;
+    }
+
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+        _logger.debug("Recorded {} spans to {}", recorded, file);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Layout of a span recording, shared by {@link SpanRecorder} and {@link SpanReplayer}. A recording starts with the
+ * magic number and the version, then records, each a type byte and its fields:
+ * <ul>
+ * <li>STRING: length and UTF-8 bytes, the next entry of the string table. Operations and tag names are written
+ * once and referenced by index.</li>
+ * <li>SPAN: span id (8 bytes, 0 if unknown), CHILD_OF count (0 or 1) and span id, FOLLOWS_FROM count and span
+ * ids, operation index, start as a delta from the start of the previous span, duration, tag count and tags (name
+ * index, type byte, value).</li>
+ * <li>SESSION: a recorder appended to the file, the string table and the start delta start over.</li>
+ * </ul>
+ * Counts, indexes and lengths are unsigned varints, timestamps and long values zigzag varints, doubles 8 bytes.
+ *
+ * @author kearls
+ */
+final class SpanRecords {
+    //"QESR"
+    static final int MAGIC = 0x51455352;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 5;
+
+    static final byte STRING = 1;
+    static final byte SPAN = 2;
+    static final byte SESSION = 3;
+
+    static final byte LONG_VALUE = 0;
+    static final byte DOUBLE_VALUE = 1;
+    static final byte BOOLEAN_VALUE = 2;
+    static final byte STRING_VALUE = 3;
+
+    private SpanRecords() {
+
+    }
+
+    static void checkHeader(ByteBuffer in, Path file) throws IOException {
+        if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC || in.get() != VERSION) {
+            throw new IOException("Not a span recording of version " + VERSION + ": " + file);
+        }
+    }
+
+    /**
+     * Position after the last complete record, from the start of the records. A recorder killed mid-write leaves
+     * a part of its last record, which ends the recording.
+     */
+    static int completeLength(ByteBuffer in, Path file) throws IOException {
+        int end = in.position();
+        try {
+            while (in.hasRemaining()) {
+                skipRecord(in, file);
+                end = in.position();
+            }
+        } catch (BufferUnderflowException ex) {
+            //Truncated record
+        }
+        return end;
+    }
+
+    private static void skipRecord(ByteBuffer in, Path file) throws IOException {
+        int record = in.position();
+        byte type = in.get();
+        if (type == STRING) {
+            skip(in, (int) readVarint(in));
+        } else if (type == SPAN) {
+            //Span id, references, operation, start and duration
+            skip(in, 8);
+            skip(in, 8 * (int) readVarint(in));
+            skip(in, 8 * (int) readVarint(in));
+            readVarint(in);
+            readVarint(in);
+            readVarint(in);
+            skipTags(in);
+        } else if (type != SESSION) {
+            throw new IOException("Unknown record type " + type + " at " + record + " of " + file);
+        }
+    }
+
+    static void skipTags(ByteBuffer in) {
+        long tags = readVarint(in);
+        for (long tag = 0; tag < tags; tag++) {
+            readVarint(in);
+            switch (in.get()) {
+                case LONG_VALUE:
+                    readVarint(in);
+                    break;
+                case DOUBLE_VALUE:
+                    skip(in, 8);
+                    break;
+                case BOOLEAN_VALUE:
+                    skip(in, 1);
+                    break;
+                default:
+                    skip(in, (int) readVarint(in));
+            }
+        }
+    }
+
+    //Underflows as a read past the end would
+    private static void skip(ByteBuffer in, int length) {
+        if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        in.position(in.position() + length);
+    }
+
+    static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static void writeZigzag(OutputStream out, long value) throws IOException {
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte next = in.get();
+            value |= (long) (next & 0x7F) << shift;
+            if (next >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint at " + in.position());
+    }
+
+    static long readZigzag(ByteBuffer in) {
+        long value = readVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeUtf8(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readUtf8(ByteBuffer in) {
+        byte[] bytes = new byte[(int) readVarint(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //Type byte and value of a tag, numbers other than whole and floating point ones as strings
+    static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(LONG_VALUE);
+            writeZigzag(out, ((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE_VALUE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN_VALUE);
+            out.writeByte((Boolean) value ? 1 : 0);
+        } else {
+            out.writeByte(STRING_VALUE);
+            writeUtf8(out, String.valueOf(value));
+        }
+    }
+
+    //Boxed value of a tag written by writeValue
+    static Object readValue(ByteBuffer in) {
+        switch (in.get()) {
+            case LONG_VALUE:
+                return readZigzag(in);
+            case DOUBLE_VALUE:
+                return in.getDouble();
+            case BOOLEAN_VALUE:
+                return in.get() != 0;
+            default:
+                return readUtf8(in);
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.QESpanBuilder;
+
+import io.opentracing.References;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Replays a {@link SpanRecorder} recording through a tracer: each span starts and finishes at its recorded time
+ * from the first span, divided by the speed, with the recorded operation, tags and references. The replayed spans
+ * get the replay times as timestamps; at {@link #MAX_SPEED} they go as fast as the tracer takes them, with the
+ * timestamps of a replay at 1x.
+ *
+ * The file is memory mapped, up to 2GB, and indexed on opening: the heap holds a few numbers per span, and the
+ * spans while replayed, for their children. A span starts after its parent (CHILD_OF, or else the first
+ * FOLLOWS_FROM), later than recorded if need be. Through a {@link org.hawkular.apm.qe.model.QETracer} the
+ * replayed QESpans are linked as the recorded ones were. A truncated last record, as left by a recorder killed
+ * mid-write, is skipped.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class SpanReplayer implements AutoCloseable {
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+    //Reference to a span not in the recording
+    private static final int MISSING = -2;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    //String tables of all the sessions, one after another
+    private final List<String> strings = new ArrayList<String>();
+
+    //By span, in file order
+    private int count = 0;
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    //First string of the session of the span
+    private int[] stringBases = new int[INITIAL_CAPACITY];
+    private long[] starts = new long[INITIAL_CAPACITY];
+    private long[] durations = new long[INITIAL_CAPACITY];
+    //First reference, -1 for a root or MISSING
+    private int[] parents;
+    //References after the first, for the few spans which have more
+    private final Map<Integer, int[]> otherReferences = new HashMap<Integer, int[]>();
+
+    public SpanReplayer(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        if (channel.size() > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Recording over 2GB: " + file);
+        }
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        index();
+    }
+
+    private void index() throws IOException {
+        ByteBuffer in = buffer.duplicate();
+        SpanRecords.checkHeader(in, file);
+        Map<Long, Integer> bySpanId = new HashMap<Long, Integer>();
+        long[] parentIds = new long[INITIAL_CAPACITY];
+        Map<Integer, long[]> otherIds = new HashMap<Integer, long[]>();
+        int stringBase = 0;
+        long previousStart = 0L;
+        int record = in.position();
+        try {
+            while (in.hasRemaining()) {
+                record = in.position();
+                byte type = in.get();
+                if (type == SpanRecords.STRING) {
+                    strings.add(SpanRecords.readUtf8(in));
+                } else if (type == SpanRecords.SESSION) {
+                    stringBase = strings.size();
+                    previousStart = 0L;
+                } else if (type == SpanRecords.SPAN) {
+                    long spanId = in.getLong();
+                    long[] references = readReferences(in);
+                    SpanRecords.readVarint(in);
+                    long start = previousStart + SpanRecords.readZigzag(in);
+                    long duration = SpanRecords.readZigzag(in);
+                    SpanRecords.skipTags(in);
+                    //Complete, add it
+                    previousStart = start;
+                    if (count == parentIds.length) {
+                        parentIds = Arrays.copyOf(parentIds, count * 2);
+                    }
+                    parentIds[count] = references.length == 0 ? 0L : references[0];
+                    if (references.length > 1) {
+                        otherIds.put(count, Arrays.copyOfRange(references, 1, references.length));
+                    }
+                    if (spanId != 0L) {
+                        bySpanId.put(spanId, count);
+                    }
+                    add(record, stringBase, start, duration);
+                } else {
+                    throw new IOException("Unknown record type " + type + " at " + record + " of " + file);
+                }
+            }
+        } catch (BufferUnderflowException ex) {
+            _logger.warn("Skipped the truncated last record at {} of {}", record, file);
+        }
+
+        //Parents may finish, and be recorded, after their children
+        parents = new int[count];
+        for (int index = 0; index < count; index++) {
+            parents[index] = parentIds[index] == 0L ? -1 : indexOf(bySpanId, parentIds[index]);
+        }
+        for (Map.Entry<Integer, long[]> entry : otherIds.entrySet()) {
+            int[] references = new int[entry.getValue().length];
+            for (int reference = 0; reference < references.length; reference++) {
+                references[reference] = indexOf(bySpanId, entry.getValue()[reference]);
+            }
+            otherReferences.put(entry.getKey(), references);
+        }
+        _logger.debug("Indexed {} spans of {}", count, file);
+    }
+
+    private static int indexOf(Map<Long, Integer> bySpanId, long spanId) {
+        Integer index = bySpanId.get(spanId);
+        return index == null ? MISSING : index;
+    }
+
+    private void add(int offset, int stringBase, long start, long duration) {
+        if (count == offsets.length) {
+            int capacity = count * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            stringBases = Arrays.copyOf(stringBases, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+        }
+        offsets[count] = offset;
+        stringBases[count] = stringBase;
+        starts[count] = start;
+        durations[count] = duration;
+        count++;
+    }
+
+    //Span ids of the CHILD_OF then the FOLLOWS_FROM references
+    private static long[] readReferences(ByteBuffer in) {
+        int childOf = (int) SpanRecords.readVarint(in);
+        long[] references = new long[childOf];
+        for (int reference = 0; reference < childOf; reference++) {
+            references[reference] = in.getLong();
+        }
+        int followsFrom = (int) SpanRecords.readVarint(in);
+        if (followsFrom > 0) {
+            references = Arrays.copyOf(references, childOf + followsFrom);
+            for (int reference = childOf; reference < references.length; reference++) {
+                references[reference] = in.getLong();
+            }
+        }
+        return references;
+    }
+
+    //Spans in the recording
+    public int size() {
+        return count;
+    }
+
+    public ReplayResult replay(Tracer tracer, double speed) {
+        return replay(tracer, speed, span -> {
+        });
+    }
+
+    /**
+     * Replays the whole recording on the calling thread.
+     *
+     * @param speed 1.0 for the recorded pace, 10.0 for ten times faster, {@link #MAX_SPEED} for no waits
+     * @param started gets each span replayed as it starts
+     */
+    public ReplayResult replay(Tracer tracer, double speed, Consumer<Span> started) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive: " + speed);
+        }
+        long[] effectiveStarts = new long[count];
+        int[] depths = new int[count];
+        Integer[] order = startOrder(effectiveStarts, depths);
+        //Replay times, microseconds from the first start
+        double scale = speed == MAX_SPEED ? 1.0 : speed;
+        long origin = count == 0 ? 0L : effectiveStarts[order[0]];
+        long[] startAt = new long[count];
+        long[] finishAt = new long[count];
+        for (int index = 0; index < count; index++) {
+            startAt[index] = (long) ((effectiveStarts[index] - origin) / scale);
+            finishAt[index] = startAt[index] + (long) (durations[index] / scale);
+        }
+        //Children first on the same finish time
+        PriorityQueue<Integer> finishing = new PriorityQueue<Integer>(Math.max(count, 1),
+                (left, right) -> finishAt[left] != finishAt[right] ? Long.compare(finishAt[left], finishAt[right])
+                        : Integer.compare(depths[right], depths[left]));
+
+        Span[] spans = new Span[count];
+        long missingReferences = 0L;
+        long base = System.currentTimeMillis() * 1000L;
+        long wallStart = System.nanoTime();
+        ByteBuffer in = buffer.duplicate();
+        int next = 0;
+        while (next < count || !finishing.isEmpty()) {
+            //Starts before finishes of the same time
+            boolean start = next < count
+                    && (finishing.isEmpty() || startAt[order[next]] <= finishAt[finishing.peek()]);
+            int index = start ? order[next++] : finishing.poll();
+            long at = start ? startAt[index] : finishAt[index];
+            if (speed != MAX_SPEED) {
+                waitUntil(wallStart + TimeUnit.MICROSECONDS.toNanos(at));
+            }
+            if (start) {
+                in.position(offsets[index]);
+                missingReferences += start(tracer, in, index, base + at, spans);
+                started.accept(spans[index]);
+                finishing.add(index);
+            } else {
+                spans[index].finish(base + at);
+            }
+        }
+        return ReplayResult.builder()
+                .speed(speed)
+                .start(base)
+                .end(count == 0 ? base : base + startAt[order[count - 1]])
+                .elapsed(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wallStart))
+                .replayed((long) count)
+                .missingReferences(missingReferences)
+                .build();
+    }
+
+    private static void waitUntil(long nanoTime) {
+        long wait;
+        while ((wait = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    //Span indexes by start, parents first: a span starts no earlier than its parent
+    private Integer[] startOrder(long[] effectiveStarts, int[] depths) {
+        boolean[] done = new boolean[count];
+        int[] chain = new int[count];
+        for (int index = 0; index < count; index++) {
+            //Up to a span done or a root, bounded in case of a loop in a corrupt file
+            int length = 0;
+            for (int span = index; span >= 0 && !done[span] && length < count; span = parents[span]) {
+                chain[length++] = span;
+            }
+            for (int link = length - 1; link >= 0; link--) {
+                int span = chain[link];
+                int parent = parents[span];
+                if (parent >= 0 && done[parent]) {
+                    effectiveStarts[span] = Math.max(starts[span], effectiveStarts[parent]);
+                    depths[span] = depths[parent] + 1;
+                } else {
+                    effectiveStarts[span] = starts[span];
+                }
+                done[span] = true;
+            }
+        }
+        Integer[] order = new Integer[count];
+        for (int index = 0; index < count; index++) {
+            order[index] = index;
+        }
+        Arrays.sort(order, (left, right) -> effectiveStarts[left] != effectiveStarts[right]
+                ? Long.compare(effectiveStarts[left], effectiveStarts[right])
+                : Integer.compare(depths[left], depths[right]));
+        return order;
+    }
+
+    //Starts the span of the record, returns the number of references left out
+    private int start(Tracer tracer, ByteBuffer in, int index, long timestamp, Span[] spans) {
+        //Type and span id
+        in.position(in.position() + 9);
+        int stringBase = stringBases[index];
+        int childOf = (int) SpanRecords.readVarint(in);
+        in.position(in.position() + 8 * childOf);
+        int followsFrom = (int) SpanRecords.readVarint(in);
+        in.position(in.position() + 8 * followsFrom);
+        String operation = strings.get(stringBase + (int) SpanRecords.readVarint(in));
+        SpanRecords.readZigzag(in);
+        SpanRecords.readZigzag(in);
+
+        Tracer.SpanBuilder builder = tracer.buildSpan(operation).withStartTimestamp(timestamp);
+        //Jaeger keeps the first reference: CHILD_OF first, as recorded
+        int missing = 0;
+        int[] others = otherReferences.get(index);
+        for (int reference = 0; reference < childOf + followsFrom; reference++) {
+            int referenced = reference == 0 ? parents[index] : others[reference - 1];
+            Span span = referenced >= 0 ? spans[referenced] : null;
+            if (span == null) {
+                missing++;
+            } else if (reference >= childOf) {
+                addFollowsFrom(builder, span);
+            } else {
+                builder.asChildOf(span);
+            }
+        }
+        long tags = SpanRecords.readVarint(in);
+        for (long tag = 0; tag < tags; tag++) {
+            String name = strings.get(stringBase + (int) SpanRecords.readVarint(in));
+            switch (in.get()) {
+                case SpanRecords.LONG_VALUE:
+                    builder.withTag(name, SpanRecords.readZigzag(in));
+                    break;
+                case SpanRecords.DOUBLE_VALUE:
+                    builder.withTag(name, in.getDouble());
+                    break;
+                case SpanRecords.BOOLEAN_VALUE:
+                    builder.withTag(name, in.get() != 0);
+                    break;
+                default:
+                    builder.withTag(name, SpanRecords.readUtf8(in));
+            }
+        }
+        spans[index] = builder.start();
+        return missing;
+    }
+
+    //A QESpan referenced as a QESpan, so the replayed span links to it
+    private static void addFollowsFrom(Tracer.SpanBuilder builder, Span span) {
+        if (builder instanceof QESpanBuilder && span instanceof QESpan) {
+            ((QESpanBuilder) builder).addReference(References.FOLLOWS_FROM, (QESpan) span);
+        } else {
+            builder.addReference(References.FOLLOWS_FROM, span.context());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+import java.nio.ByteBuffer;
+
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.QESpanBuilder;
+import org.hawkular.apm.qe.model.QETags;
+
+/**
+ * A span of a {@link SpanColumnReader} scan. The scan moves the same instance from span to span, so it is only
+ * valid within the consumer call; keep {@link #toQESpan()} or the values themselves. Tags are decoded when asked
+ * for.
+ *
+ * @author kearls
+ */
+public final class StoredSpan {
+    private final SpanColumnReader reader;
+    private ByteBuffer block;
+    private int operation;
+    private long start;
+    private long duration;
+    private int spanIdOffset;
+    private int parentIdOffset;
+    private int tagsOffset;
+
+    StoredSpan(SpanColumnReader reader) {
+        this.reader = reader;
+    }
+
+    void moveTo(ByteBuffer block, int operation, long start, long duration, int spanIdOffset, int parentIdOffset,
+            int tagsOffset) {
+        this.block = block;
+        this.operation = operation;
+        this.start = start;
+        this.duration = duration;
+        this.spanIdOffset = spanIdOffset;
+        this.parentIdOffset = parentIdOffset;
+        this.tagsOffset = tagsOffset;
+    }
+
+    public String getOperation() {
+        return reader.getOperations().get(operation);
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public long getEnd() {
+        return start + duration;
+    }
+
+    //Hex, as QESpan.getSpanId(). Null if unknown
+    public String getSpanId() {
+        return toHex(block.getLong(spanIdOffset));
+    }
+
+    //Null for a root span
+    public String getParentId() {
+        return toHex(block.getLong(parentIdOffset));
+    }
+
+    private static String toHex(long id) {
+        return id == 0L ? null : Long.toHexString(id);
+    }
+
+    public QETags getTags() {
+        QETags tags = new QETags();
+        readTags(tags);
+        return tags;
+    }
+
+    private void readTags(QETags tags) {
+        ByteBuffer in = tags();
+        for (int count = (int) SpanRecords.readVarint(in); count > 0; count--) {
+            String name = reader.getTagKeys().get((int) SpanRecords.readVarint(in));
+            Object value = SpanRecords.readValue(in);
+            if (value instanceof Long) {
+                tags.put(name, (long) (Long) value);
+            } else if (value instanceof Double) {
+                tags.put(name, (double) (Double) value);
+            } else if (value instanceof Boolean) {
+                tags.put(name, (boolean) (Boolean) value);
+            } else {
+                tags.put(name, (String) value);
+            }
+        }
+    }
+
+    //Latest value of the tag, null if the span does not have it
+    public Object getTag(String name) {
+        Integer key = reader.tagKeyIndex(name);
+        return key == null ? null : SpanColumnReader.tagValue(tags(), key);
+    }
+
+    private ByteBuffer tags() {
+        ByteBuffer in = block.duplicate();
+        in.position(tagsOffset);
+        return in;
+    }
+
+    /**
+     * Offline copy of the span, not linked to its parent. {@link SpanColumnReader#list(SpanFilter)} links the spans
+     * it returns.
+     */
+    public QESpan toQESpan() {
+        QESpanBuilder qeSpanBuilder = QESpanBuilder.offlineBuilder(getOperation());
+        qeSpanBuilder.withStartTimestamp(start);
+        QESpan qeSpan = qeSpanBuilder.build();
+        qeSpan.finish(getEnd());
+        qeSpan.setSpanId(getSpanId());
+        readTags(qeSpan.getQETags());
+        return qeSpan;
+    }
+
+    @Override
+    public String toString() {
+        return "StoredSpan(operation=" + getOperation() + ", start=" + start + ", duration=" + duration
+                + ", spanId=" + getSpanId() + ", parentId=" + getParentId() + ")";
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * Shape of the traces made by {@link TraceTopologyGenerator}.
+ *
+ * @author kearls
+ */
+@Builder
+@Data
+@ToString
+public class TopologyConf {
+    //Operation of the root span, the others get their depth appended
+    private String operation;
+    //Levels below the root span
+    private Integer depth;
+    //Children of each span
+    private Integer fanOut;
+    //Share of the children started as FOLLOWS_FROM async branches instead of CHILD_OF calls, 0 to 1
+    private Double followsFromRatio;
+    //Spans of a trace at most, the last level is cut short to stay within it
+    private Integer maxSpans;
+    //Seed of the random follows from choices, the same seed gives the same shape
+    private Long seed;
+
+    public String getOperation() {
+        if (operation == null) {
+            return "topology";
+        }
+        return operation;
+    }
+
+    public Integer getDepth() {
+        if (depth == null) {
+            return 3;
+        }
+        return depth;
+    }
+
+    public Integer getFanOut() {
+        if (fanOut == null) {
+            return 2;
+        }
+        return fanOut;
+    }
+
+    public Double getFollowsFromRatio() {
+        if (followsFromRatio == null) {
+            return 0.0;
+        }
+        return followsFromRatio;
+    }
+
+    public Integer getMaxSpans() {
+        if (maxSpans == null) {
+            return 10000;
+        }
+        return maxSpans;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.QESpanBuilder;
+import org.hawkular.apm.qe.model.QETracer;
+
+import io.opentracing.References;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Starts and finishes whole traces through {@link QETracer}, with the depth, fan-out, FOLLOWS_FROM branches and
+ * span count of a {@link TopologyConf}. Spans are made breadth first, so a trace cut at the span count is still
+ * as deep as it can be, and finished children first. Timestamps are synthetic: each span starts a microsecond
+ * after its previous sibling and lasts until its last CHILD_OF child has ended. FOLLOWS_FROM branches may end
+ * after the span they follow from, as async work does.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class TraceTopologyGenerator {
+    //Duration of a span without CHILD_OF children, microseconds
+    private static final long LEAF_DURATION = 10L;
+
+    private final QETracer qeTracer;
+    private final TopologyConf conf;
+    private final Random random;
+
+    public TraceTopologyGenerator(QETracer qeTracer, TopologyConf conf) {
+        this.qeTracer = qeTracer;
+        this.conf = conf;
+        this.random = conf.getSeed() == null ? new Random() : new Random(conf.getSeed());
+    }
+
+    //Spans of a new trace, finished, root first and breadth first
+    public List<QESpan> generate() {
+        int maxSpans = conf.getMaxSpans();
+        List<QESpan> spans = new ArrayList<QESpan>(Math.min(maxSpans, 1024));
+        //Index of the parent span, and whether the span follows from it, by span index
+        int[] parents = new int[maxSpans];
+        boolean[] follows = new boolean[maxSpans];
+        int[] depths = new int[maxSpans];
+
+        long start = System.currentTimeMillis() * 1000L;
+        spans.add(start(qeTracer.buildSpan(conf.getOperation()), start, 0));
+        parents[0] = -1;
+        for (int index = 0; index < spans.size() && depths[index] < conf.getDepth(); index++) {
+            QESpan parent = spans.get(index);
+            for (int child = 0; child < conf.getFanOut() && spans.size() < maxSpans; child++) {
+                int depth = depths[index] + 1;
+                boolean followsFrom = random.nextDouble() < conf.getFollowsFromRatio();
+                QESpanBuilder builder = qeTracer.buildSpan(conf.getOperation() + "-" + depth)
+                        .addReference(followsFrom ? References.FOLLOWS_FROM : References.CHILD_OF, parent);
+                parents[spans.size()] = index;
+                follows[spans.size()] = followsFrom;
+                depths[spans.size()] = depth;
+                spans.add(start(builder, parent.getStart() + 1 + child, depth));
+            }
+        }
+
+        //Children have higher indexes than their parents
+        long[] ends = new long[spans.size()];
+        for (int index = spans.size() - 1; index >= 0; index--) {
+            QESpan span = spans.get(index);
+            ends[index] = Math.max(ends[index] + 1, span.getStart() + LEAF_DURATION);
+            span.finish(ends[index]);
+            if (parents[index] >= 0 && !follows[index]) {
+                ends[parents[index]] = Math.max(ends[parents[index]], ends[index]);
+            }
+        }
+        _logger.debug("Generated a trace of {} spans, {}", spans.size(), conf);
+        return spans;
+    }
+
+    private QESpan start(QESpanBuilder builder, long start, int depth) {
+        builder.withStartTimestamp(start);
+        return (QESpan) builder.withTag("depth", depth).start();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import io.opentracing.propagation.TextMap;
+
+/**
+ * Reusable carrier for the TEXT_MAP and HTTP_HEADERS formats: keys and values in parallel arrays, kept across
+ * {@link #clear()}, so a carrier used hop after hop does not allocate once it has grown to the number of entries.
+ * Iteration hands out the same entry each time, moved along the arrays: read it before the next call to next(),
+ * as the codecs do. Not thread safe, use one carrier per thread.
+ *
+ * @author kearls
+ */
+public class QECarrier implements TextMap {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private String[] values = new String[INITIAL_CAPACITY];
+    private int size;
+    private final Cursor cursor = new Cursor();
+
+    //Replaces the value of a key already there
+    @Override
+    public void put(String key, String value) {
+        for (int index = 0; index < size; index++) {
+            if (keys[index].equals(key)) {
+                values[index] = value;
+                return;
+            }
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+    }
+
+    public String get(String key) {
+        for (int index = 0; index < size; index++) {
+            if (keys[index].equals(key)) {
+                return values[index];
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public QECarrier clear() {
+        //Drop the references, keep the arrays
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        return this;
+    }
+
+    //Copy of the entries, as HTTP headers for a request for instance
+    public Map<String, String> asMap() {
+        Map<String, String> map = new LinkedHashMap<String, String>(size * 4 / 3 + 1);
+        for (int index = 0; index < size; index++) {
+            map.put(keys[index], values[index]);
+        }
+        return map;
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, String>> iterator() {
+        cursor.position = -1;
+        return cursor;
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+
+    private class Cursor implements Iterator<Map.Entry<String, String>>, Map.Entry<String, String> {
+        private int position;
+
+        @Override
+        public boolean hasNext() {
+            return position + 1 < size;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            position++;
+            return this;
+        }
+
+        @Override
+        public String getKey() {
+            return keys[position];
+        }
+
+        @Override
+        public String getValue() {
+            return values[position];
+        }
+
+        @Override
+        public String setValue(String value) {
+            String previous = values[position];
+            values[position] = value;
+            return previous;
+        }
+    }
+}
@@ -16,14 +16,17 @@
  */
 package org.hawkular.apm.qe.model;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.ToString;
 
@@ -32,22 +35,56 @@ import lombok.ToString;
  * @author kearls
  */
 @Getter
-@ToString
-@AllArgsConstructor
+@ToString(exclude = { "followsFrom", "listener", "fingerprint", "fingerprinted" })
 public class QESpan implements Span {
-    private Map<String, Object> tags = new HashMap<String, Object>();
+    private QETags tags = new QETags();
     private Long start;
     private Long end;
     private Long duration;
     private String operation;
     private String spanId;
     private QESpan parent;
+    //Spans referenced with FOLLOWS_FROM
+    private List<QESpan> followsFrom = new ArrayList<QESpan>();
     private Span spanObj;
-    private static final List<String> TAGS_EQUAL_IGNORE_LIST = Arrays.asList("errZeroParentID", "sampler.type",
-            "sampler.param");
+    //Of the QETracer which built the span, if any
+    private QESpanListener listener;
+    //Tags added by the client or the server, not by tests. Left out of equals and fingerprint
+    private static final Set<String> TAGS_EQUAL_IGNORE_LIST = new HashSet<String>(Arrays.asList("errZeroParentID",
+            "sampler.type", "sampler.param", "jaeger.hostname", "jaeger.version"));
+    //Of the finished span, reset when it changes
+    @Getter(AccessLevel.NONE)
+    private long fingerprint;
+    @Getter(AccessLevel.NONE)
+    private boolean fingerprinted;
+
+    public QESpan(QETags tags, Long start, Long end, Long duration, String operation, String spanId, QESpan parent,
+            List<QESpan> followsFrom, Span spanObj, QESpanListener listener) {
+        this.tags = tags;
+        this.start = start;
+        this.end = end;
+        this.duration = duration;
+        this.operation = operation;
+        this.spanId = spanId;
+        this.parent = parent;
+        this.followsFrom = followsFrom;
+        this.spanObj = spanObj;
+        this.listener = listener;
+    }
+
+    //Copy of the tags, see getQETags() for the tags themselves
+    public Map<String, Object> getTags() {
+        return tags.asMap();
+    }
+
+    //Tags put here directly do not reset the fingerprint, set them before the span is finished
+    public QETags getQETags() {
+        return tags;
+    }
 
     public Span setOperationName(String operation) {
         this.operation = operation;
+        fingerprinted = false;
         if (spanObj != null) {
             spanObj.setOperationName(operation);
         }
@@ -59,6 +96,11 @@ public class QESpan implements Span {
         this.parent = parent;
     }
 
+    public void addFollowsFrom(QESpan span) {
+        throwOnlineTracerException();
+        this.followsFrom.add(span);
+    }
+
     public void setSpanId(String spanId) {
         throwOnlineTracerException();
         this.spanId = spanId;
@@ -87,6 +129,7 @@ public class QESpan implements Span {
 
     public Span setTag(String name, String value) {
         this.tags.put(name, value);
+        fingerprinted = false;
         if (spanObj != null) {
             spanObj.setTag(name, value);
         }
@@ -95,6 +138,7 @@ public class QESpan implements Span {
 
     public Span setTag(String name, boolean value) {
         this.tags.put(name, value);
+        fingerprinted = false;
         if (spanObj != null) {
             spanObj.setTag(name, value);
         }
@@ -103,6 +147,7 @@ public class QESpan implements Span {
 
     public Span setTag(String name, Number value) {
         this.tags.put(name, value);
+        fingerprinted = false;
         if (spanObj != null) {
             spanObj.setTag(name, value);
         }
@@ -146,9 +191,13 @@ public class QESpan implements Span {
 
     public void finish(long end) {
         this.end = end;
+        fingerprinted = false;
         if (spanObj != null) {
             spanObj.finish(end);
         }
+        if (listener != null) {
+            listener.finished(this);
+        }
     }
 
     @Override
@@ -160,9 +209,12 @@ public class QESpan implements Span {
         finish(System.currentTimeMillis() * 1000L);
     }
 
+    //Finishes the span if it was not, as the spans of the tracers do on close
     @Override
     public void close() {
-
+        if (end == null) {
+            finish();
+        }
     }
 
     public Long getEnd() {
@@ -179,51 +231,74 @@ public class QESpan implements Span {
         return duration;
     }
 
+    //Tag values as compared: a boolean or a number matches its string form, as some servers return them
+    private static String canonicalValue(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Same operation, start and duration, and every tag of this span, save the ignored ones, on the other span
+     * with the same value. The other span may have more tags: pass the expected span as this one and the span read
+     * from the server as the other.
+     */
     @Override
     public boolean equals(Object obj) {
-        if (obj == null || !QESpan.class.isAssignableFrom(obj.getClass())) {
-            return false;
-        }
-        final QESpan other = (QESpan) obj;
-        if (!getOperation().equals(other.getOperation())) {
-            return false;
+        if (this == obj) {
+            return true;
         }
-        if (getStart().compareTo(other.getStart()) != 0) {
+        if (!(obj instanceof QESpan)) {
             return false;
         }
-        if (getDuration().compareTo(other.getDuration()) != 0) {
-            return false;
-        }
-        /*
-        if (!getTags().keySet().equals(other.getTags().keySet())) {
+        final QESpan other = (QESpan) obj;
+        if (!Objects.equals(getOperation(), other.getOperation())
+                || !Objects.equals(getStart(), other.getStart())
+                || !Objects.equals(getDuration(), other.getDuration())) {
             return false;
         }
-        */
-        for (String name : getTags().keySet()) {
-            if (!TAGS_EQUAL_IGNORE_LIST.contains(name)) {
-                if (getTags().get(name) instanceof Number) {
-                    if (!getTags().get(name).toString().equals(other.getTags().get(name).toString())) {
-                        return false;
-                    }
-                } else if (tags.get(name) instanceof Boolean) {
-                    if (getTags().get(name) != other.getTags().get(name)) {
-                        return false;
-                    }
-                } else {
-                    if (!getTags().get(name).equals(other.getTags().get(name))) {
-                        return false;
-                    }
-                }
+        for (int index = 0; index < tags.size(); index++) {
+            String name = tags.getName(index);
+            if (!TAGS_EQUAL_IGNORE_LIST.contains(name)
+                    && !Objects.equals(canonicalValue(tags.get(name)), canonicalValue(other.tags.get(name)))) {
+                return false;
             }
         }
         return true;
     }
 
+    //Fields equals compares in full, consistent with it
     @Override
     public int hashCode() {
-        int result = 17;
-        result = 31 * result + operation.hashCode();
-        return result;
+        return Objects.hash(getOperation(), getStart(), getDuration());
     }
 
+    /**
+     * Canonical 64 bit hash of the operation, start, duration and tags, save the ignored ones, with tag values
+     * in their canonical form and tags in any order. Spans with the same fingerprint are equal both ways, bar hash
+     * collisions. Spans change until finished, compute it after: it is kept once the span has an end, until the
+     * span is changed through its setters.
+     */
+    public long fingerprint() {
+        if (fingerprinted) {
+            return fingerprint;
+        }
+        long hash = 1125899906842597L;
+        hash = 31 * hash + Objects.hashCode(getOperation());
+        hash = 31 * hash + Objects.hashCode(getStart());
+        hash = 31 * hash + Objects.hashCode(getDuration());
+        long tagsHash = 0L;
+        for (int index = 0; index < tags.size(); index++) {
+            String name = tags.getName(index);
+            if (!TAGS_EQUAL_IGNORE_LIST.contains(name)) {
+                //Summed, so the order of the tags does not matter
+                tagsHash += Hashes.mix(((long) name.hashCode() << 32)
+                        ^ (Objects.hashCode(canonicalValue(tags.getValue(index))) & 0xffffffffL));
+            }
+        }
+        long result = Hashes.mix(hash) ^ tagsHash;
+        if (getEnd() != null) {
+            fingerprint = result;
+            fingerprinted = true;
+        }
+        return result;
+    }
 }
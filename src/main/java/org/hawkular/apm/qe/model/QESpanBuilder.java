@@ -16,29 +16,40 @@
  */
 package org.hawkular.apm.qe.model;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
+import org.hawkular.apm.qe.tracer.SpanIds;
 import org.jboss.resteasy.spi.NotImplementedYetException;
 
+import io.opentracing.References;
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
 
 
 /**
+ * jaeger-core keeps a single reference, the first one added, CHILD_OF or FOLLOWS_FROM, and reports it as the
+ * parent. Spans built here do the same, so the expected spans have the parents the server will show.
+ *
  * @author Jeeva Kandasamy (jkandasa)
  */
 public class QESpanBuilder implements Tracer.SpanBuilder {
-    private Map<String, Object> tags = new HashMap<String, Object>();
+    private QETags tags = new QETags();
     private Long start;
     private Long end;
     private Long duration;
     private String operation;
     private String id;
     private QESpan parent;
+    private List<QESpan> followsFrom = new ArrayList<QESpan>();
+    //References to spans known by their context only, as extracted from a carrier
+    private List<String> referenceTypes = new ArrayList<String>();
+    private List<SpanContext> referenceContexts = new ArrayList<SpanContext>();
     private Span spanObj;
     private Tracer tracer;
+    private QESpanListener listener;
 
     public static QESpanBuilder offlineBuilder(String operation) {
         return new QESpanBuilder(null, operation);
@@ -49,28 +60,52 @@ public class QESpanBuilder implements Tracer.SpanBuilder {
         this.operation = operation;
     }
 
+    QESpanBuilder listener(QESpanListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
     public Tracer.SpanBuilder withStartTimestamp(long start) {
         this.start = start;
         return this;
     }
 
 
-    /**
-     * FIXME Implement
-     *
-     * @param parent
-     * @return
-     */
     @Override
-    public Tracer.SpanBuilder asChildOf(SpanContext parent) {
-        throw new NotImplementedYetException();
+    public QESpanBuilder asChildOf(SpanContext parent) {
+        return addReference(References.CHILD_OF, parent);
     }
 
-    public Tracer.SpanBuilder asChildOf(Span parent) {
+    public QESpanBuilder asChildOf(Span parent) {
         this.parent = (QESpan) parent;
         return this;
     }
 
+    //Only the tracer gets these, the QESpan started does not know the referenced span
+    @Override
+    public QESpanBuilder addReference(String referenceType, SpanContext referencedContext) {
+        referenceTypes.add(referenceType);
+        referenceContexts.add(referencedContext);
+        return this;
+    }
+
+    public QESpanBuilder addReference(String referenceType, QESpan referenced) {
+        if (References.FOLLOWS_FROM.equals(referenceType)) {
+            followsFrom.add(referenced);
+        } else if (References.CHILD_OF.equals(referenceType)) {
+            parent = referenced;
+        }
+        return this;
+    }
+
+    //As jaeger-core records it: the CHILD_OF span, or else the first FOLLOWS_FROM span, added to the tracer first
+    private QESpan recordedParent() {
+        if (parent == null && !followsFrom.isEmpty()) {
+            return followsFrom.get(0);
+        }
+        return parent;
+    }
+
     public Span start() {
         if (tracer == null) {
             throw new RuntimeException("Tracer has been not set. Call 'build()' method to create offline instance");
@@ -78,55 +113,56 @@ public class QESpanBuilder implements Tracer.SpanBuilder {
         if (start == null) {
             start = System.currentTimeMillis() * 1000L;
         }
-        if (parent == null) {
-            spanObj = tracer.buildSpan(operation)
-                    .withStartTimestamp(start)
-                    .start();
-        } else {
-            spanObj = tracer.buildSpan(operation)
-                    .withStartTimestamp(start)
-                    .asChildOf(parent.getSpanObj())
-                    .start();
+        Tracer.SpanBuilder builder = tracer.buildSpan(operation).withStartTimestamp(start);
+        if (parent != null) {
+            builder.asChildOf(parent.getSpanObj());
         }
-        //Update Tags
-        for (String name : tags.keySet()) {
-            if (tags.get(name) instanceof String) {
-                spanObj.setTag(name, (String) tags.get(name));
-            } else if (tags.get(name) instanceof Number) {
-                spanObj.setTag(name, (Number) tags.get(name));
-            } else if (tags.get(name) instanceof Boolean) {
-                spanObj.setTag(name, (Boolean) tags.get(name));
-            } else {
-                //Not supported
-            }
+        for (QESpan span : followsFrom) {
+            builder.addReference(References.FOLLOWS_FROM, span.context());
         }
+        for (int index = 0; index < referenceTypes.size(); index++) {
+            builder.addReference(referenceTypes.get(index), referenceContexts.get(index));
+        }
+        spanObj = builder.start();
+        //Update Tags
+        tags.applyTo(spanObj);
+        //Same span id as the server reports, so expected and actual spans can be paired
+        String spanId = id == null ? SpanIds.spanId(spanObj.context()) : id;
 
-        return new QESpan(tags, start, end, duration, operation, id, parent, spanObj);
+        return new QESpan(tags, start, end, duration, operation, spanId, recordedParent(),
+                new ArrayList<QESpan>(followsFrom), spanObj, listener);
     }
 
     public QESpan build() {
         if (tracer != null) {
             throw new RuntimeException("Tracer has been set. Call 'start()' method to create online instance");
         }
-        return new QESpan(tags, start, end, duration, operation, id, parent, null);
+        return new QESpan(tags, start, end, duration, operation, id, recordedParent(),
+                new ArrayList<QESpan>(followsFrom), null, null);
     }
 
-    public Tracer.SpanBuilder withTag(String name, Number value) {
+    public QESpanBuilder withTag(String name, Number value) {
         this.tags.put(name, value);
         return this;
     }
 
-    public Tracer.SpanBuilder withTag(String name, boolean value) {
+    //Primitive overloads, int and long values are not boxed
+    public QESpanBuilder withTag(String name, long value) {
         this.tags.put(name, value);
         return this;
     }
 
-    @Override
-    public Tracer.SpanBuilder addReference(String s, SpanContext spanContext) {
-        return null;
+    public QESpanBuilder withTag(String name, double value) {
+        this.tags.put(name, value);
+        return this;
+    }
+
+    public QESpanBuilder withTag(String name, boolean value) {
+        this.tags.put(name, value);
+        return this;
     }
 
-    public Tracer.SpanBuilder withTag(String name, String value) {
+    public QESpanBuilder withTag(String name, String value) {
         this.tags.put(name, value);
         return this;
     }
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.opentracing.Span;
+
+/**
+ * Span tags in parallel arrays: a name and a type per tag, and the value in the array for its type. Primitive
+ * values are stored unboxed and the tags are copied onto a span in a single pass, without the map entries, boxing
+ * and type checks of a {@code Map<String, Object>}. Numbers which come in boxed are kept as they are.
+ *
+ * Setting a name again replaces its value in place, so the entries hold each name once and the value last set, as
+ * the span does; finding the name is a scan of the few tags of a span. Arrays are allocated on the first tag of
+ * their kind, a span without tags costs one small object. Not thread safe, like the spans holding it.
+ *
+ * @author kearls
+ */
+public class QETags {
+    private static final byte LONG = 0;
+    private static final byte DOUBLE = 1;
+    private static final byte BOOLEAN = 2;
+    //String or boxed Number, in objects
+    private static final byte OBJECT = 3;
+    private static final int INITIAL_CAPACITY = 8;
+    private static final String[] NO_NAMES = new String[0];
+    private static final byte[] NO_TYPES = new byte[0];
+    private static final long[] NO_PRIMITIVES = new long[0];
+
+    private String[] names = NO_NAMES;
+    private byte[] types = NO_TYPES;
+    //Longs, doubles as raw bits and booleans as 0 or 1
+    private long[] primitives = NO_PRIMITIVES;
+    private Object[] objects = null;
+    private int size = 0;
+
+    //Index of a new entry. Reallocates the arrays
+    private int append(String name, byte type) {
+        if (size == names.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+            names = Arrays.copyOf(names, capacity);
+            types = Arrays.copyOf(types, capacity);
+            primitives = Arrays.copyOf(primitives, capacity);
+            if (objects != null) {
+                objects = Arrays.copyOf(objects, capacity);
+            }
+        }
+        names[size] = name;
+        types[size] = type;
+        return size++;
+    }
+
+    //Entry of the name, replaced, or a new entry
+    private int entry(String name, byte type) {
+        int index = indexOf(name);
+        if (index < 0) {
+            return append(name, type);
+        }
+        types[index] = type;
+        if (objects != null) {
+            objects[index] = null;
+        }
+        return index;
+    }
+
+    private int indexOf(String name) {
+        for (int index = 0; index < size; index++) {
+            if (names[index].equals(name)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    public QETags put(String name, long value) {
+        int index = entry(name, LONG);
+        primitives[index] = value;
+        return this;
+    }
+
+    public QETags put(String name, double value) {
+        int index = entry(name, DOUBLE);
+        primitives[index] = Double.doubleToRawLongBits(value);
+        return this;
+    }
+
+    public QETags put(String name, boolean value) {
+        int index = entry(name, BOOLEAN);
+        primitives[index] = value ? 1L : 0L;
+        return this;
+    }
+
+    public QETags put(String name, String value) {
+        putObject(name, value);
+        return this;
+    }
+
+    public QETags put(String name, Number value) {
+        putObject(name, value);
+        return this;
+    }
+
+    private void putObject(String name, Object value) {
+        int index = entry(name, OBJECT);
+        if (objects == null) {
+            objects = new Object[names.length];
+        }
+        objects[index] = value;
+    }
+
+    //Number of names
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    //Boxes primitive values
+    public Object getValue(int index) {
+        switch (types[index]) {
+            case LONG:
+                return primitives[index];
+            case DOUBLE:
+                return Double.longBitsToDouble(primitives[index]);
+            case BOOLEAN:
+                return primitives[index] != 0L;
+            default:
+                return objects[index];
+        }
+    }
+
+    public Object get(String name) {
+        int index = indexOf(name);
+        return index < 0 ? null : getValue(index);
+    }
+
+    //Sets all the tags on the span, in the order they were put
+    public void applyTo(Span span) {
+        for (int index = 0; index < size; index++) {
+            switch (types[index]) {
+                case LONG:
+                    span.setTag(names[index], primitives[index]);
+                    break;
+                case DOUBLE:
+                    span.setTag(names[index], Double.longBitsToDouble(primitives[index]));
+                    break;
+                case BOOLEAN:
+                    span.setTag(names[index], primitives[index] != 0L);
+                    break;
+                default:
+                    if (objects[index] instanceof String) {
+                        span.setTag(names[index], (String) objects[index]);
+                    } else {
+                        span.setTag(names[index], (Number) objects[index]);
+                    }
+                    break;
+            }
+        }
+    }
+
+    //Copy of the tags, primitive values boxed
+    public Map<String, Object> asMap() {
+        Map<String, Object> map = new HashMap<String, Object>(size * 4 / 3 + 1);
+        for (int index = 0; index < size; index++) {
+            map.put(names[index], getValue(index));
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+}
@@ -16,33 +16,42 @@
  */
 package org.hawkular.apm.qe.model;
 
-import org.jboss.resteasy.spi.NotImplementedYetException;
-
 import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
 import io.opentracing.propagation.Format;
 
 /**
+ * Propagation, TEXT_MAP and HTTP_HEADERS included, goes to the wrapped tracer. Use a {@link QECarrier} as the
+ * carrier for either, and clear it to reuse it for the next hop.
+ *
  * @author Jeeva Kandasamy (jkandasa)
+ * @author kearls
  */
 public class QETracer  implements Tracer {
     Tracer tracer = null;
+    QESpanListener listener = null;
 
     public QETracer(Tracer tracer) {
         this.tracer = tracer;
     }
 
+    //The listener is told about every span of this tracer as it finishes, to record them for instance
+    public QETracer(Tracer tracer, QESpanListener listener) {
+        this.tracer = tracer;
+        this.listener = listener;
+    }
+
     public QESpanBuilder buildSpan(String operation) {
-        return new QESpanBuilder(this.tracer, operation);
+        return new QESpanBuilder(this.tracer, operation).listener(listener);
     }
 
     @Override
     public <C> void inject(SpanContext spanContext, Format<C> format, C c) {
-        throw new NotImplementedYetException();
+        tracer.inject(spanContext, format, c);
     }
 
     @Override
     public <C> SpanContext extract(Format<C> format, C c) {
-        throw new NotImplementedYetException();
+        return tracer.extract(format, c);
     }
 }
\ No newline at end of file
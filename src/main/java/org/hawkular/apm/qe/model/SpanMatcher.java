@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches expected spans against the spans read from a server in linear time. The actual spans are indexed once
+ * by {@link QESpan#fingerprint()}, and by {@link QESpan#hashCode()} for those which carry extra tags, then each
+ * expected span is looked up instead of compared with every actual span. Each actual span matches one expected
+ * span at most: two equal expected spans need two actual spans.
+ *
+ * @author kearls
+ */
+public class SpanMatcher {
+    private final Map<Long, List<QESpan>> byFingerprint;
+    private final Map<Integer, List<QESpan>> byIdentity;
+
+    public SpanMatcher(Collection<QESpan> actual) {
+        byFingerprint = new HashMap<Long, List<QESpan>>(actual.size() * 4 / 3 + 1);
+        byIdentity = new HashMap<Integer, List<QESpan>>(actual.size() * 4 / 3 + 1);
+        for (QESpan span : actual) {
+            byFingerprint.computeIfAbsent(span.fingerprint(), key -> new ArrayList<QESpan>(1)).add(span);
+            byIdentity.computeIfAbsent(span.hashCode(), key -> new ArrayList<QESpan>(1)).add(span);
+        }
+    }
+
+    public static boolean containsAll(Collection<QESpan> actual, Collection<QESpan> expected) {
+        return new SpanMatcher(actual).missing(expected).isEmpty();
+    }
+
+    //An actual span equal to the expected one and not matched yet, null if none. The span returned is used up
+    public QESpan find(QESpan expected) {
+        QESpan match = findExact(expected);
+        if (match == null) {
+            match = findWithExtraTags(expected);
+        }
+        return match;
+    }
+
+    //Same fingerprint, equal both ways
+    private QESpan findExact(QESpan expected) {
+        return take(expected, byFingerprint.get(expected.fingerprint()));
+    }
+
+    //Same operation, start and duration, extra tags on the actual span
+    private QESpan findWithExtraTags(QESpan expected) {
+        return take(expected, byIdentity.get(expected.hashCode()));
+    }
+
+    private QESpan take(QESpan expected, List<QESpan> candidates) {
+        if (candidates != null) {
+            for (QESpan candidate : candidates) {
+                if (expected.equals(candidate)) {
+                    remove(byFingerprint.get(candidate.fingerprint()), candidate);
+                    remove(byIdentity.get(candidate.hashCode()), candidate);
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    //By identity, equals would take any actual span with the same tags and more
+    private static void remove(List<QESpan> spans, QESpan span) {
+        for (int index = 0; index < spans.size(); index++) {
+            if (spans.get(index) == span) {
+                spans.remove(index);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Expected spans without an actual span, in order. Exact matches are taken first for all the expected spans,
+     * so an expected span with fewer tags does not use up the actual span another expected span is equal to.
+     */
+    public List<QESpan> missing(Collection<QESpan> expected) {
+        List<QESpan> inexact = new ArrayList<QESpan>();
+        for (QESpan span : expected) {
+            if (findExact(span) == null) {
+                inexact.add(span);
+            }
+        }
+        List<QESpan> missing = new ArrayList<QESpan>();
+        for (QESpan span : inexact) {
+            if (findWithExtraTags(span) == null) {
+                missing.add(span);
+            }
+        }
+        return missing;
+    }
+}
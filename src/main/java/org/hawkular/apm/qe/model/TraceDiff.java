@@ -0,0 +1,306 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Structural difference between the expected spans of a trace and the spans read from a server, linked through
+ * {@link QESpan#getParent()}. Spans are paired by span id, then by {@link QESpan#fingerprint()}, then by operation,
+ * start and duration, and reported as missing, extra, reparented (paired, under another parent) or mismatched
+ * (paired, not equal). Subtrees are hashed bottom-up, so identical traces and identical subtrees are not walked
+ * span by span. Runs in time linear with the number of spans, without recursion, whatever the depth of the trace.
+ * <p>
+ * The fast path for identical traces and the skip of identical subtrees trust the 64 bit hashes and do not call
+ * {@link QESpan#equals(Object)}: a hash collision, about one in 2^64 for a pair of spans, hides a difference.
+ *
+ * @author kearls
+ */
+@Getter
+public class TraceDiff {
+    //Spans listed in toString() for each kind of difference
+    private static final int TO_STRING_LIMIT = 10;
+
+    private final List<QESpan> missing = new ArrayList<QESpan>();
+    private final List<QESpan> extra = new ArrayList<QESpan>();
+    private final List<SpanPair> reparented = new ArrayList<SpanPair>();
+    private final List<SpanPair> mismatched = new ArrayList<SpanPair>();
+
+    @Getter
+    @AllArgsConstructor
+    public static class SpanPair {
+        private final QESpan expected;
+        private final QESpan actual;
+
+        @Override
+        public String toString() {
+            return describe(expected) + "->" + describe(actual);
+        }
+    }
+
+    public static TraceDiff compare(Collection<QESpan> expected, Collection<QESpan> actual) {
+        TraceDiff diff = new TraceDiff();
+        Tree expectedTree = new Tree(expected);
+        Tree actualTree = new Tree(actual);
+        //Trusts the hashes, see above
+        if (expectedTree.size() == actualTree.size() && expectedTree.acyclic && actualTree.acyclic
+                && Arrays.equals(expectedTree.rootHashes(), actualTree.rootHashes())) {
+            return diff;
+        }
+        int[] pairs = pair(expectedTree, actualTree);
+        boolean[] paired = new boolean[actualTree.size()];
+        for (int index = 0; index < pairs.length; index++) {
+            if (pairs[index] < 0) {
+                diff.missing.add(expectedTree.spans[index]);
+            } else {
+                paired[pairs[index]] = true;
+            }
+        }
+        for (int index = 0; index < paired.length; index++) {
+            if (!paired[index]) {
+                diff.extra.add(actualTree.spans[index]);
+            }
+        }
+        diff.check(expectedTree, actualTree, pairs);
+        return diff;
+    }
+
+    public boolean isEmpty() {
+        return missing.isEmpty() && extra.isEmpty() && reparented.isEmpty() && mismatched.isEmpty();
+    }
+
+    //Index of the actual span paired with each expected span, -1 if none
+    private static int[] pair(Tree expectedTree, Tree actualTree) {
+        int[] pairs = new int[expectedTree.size()];
+        Arrays.fill(pairs, -1);
+        boolean[] paired = new boolean[actualTree.size()];
+        //By span id, set by the server and, for spans started by the tracer, by the client
+        Map<String, Integer> byId = new HashMap<String, Integer>(actualTree.size() * 4 / 3 + 1);
+        for (int index = 0; index < actualTree.size(); index++) {
+            if (actualTree.spans[index].getSpanId() != null) {
+                byId.put(actualTree.spans[index].getSpanId(), index);
+            }
+        }
+        for (int index = 0; index < pairs.length; index++) {
+            String spanId = expectedTree.spans[index].getSpanId();
+            Integer match = spanId == null ? null : byId.get(spanId);
+            if (match != null && !paired[match]) {
+                pairs[index] = match;
+                paired[match] = true;
+            }
+        }
+        //Equal spans, then spans with the same operation, start and duration, to report as mismatched
+        Map<Long, ArrayDeque<Integer>> byFingerprint = new HashMap<Long, ArrayDeque<Integer>>();
+        Map<Long, ArrayDeque<Integer>> byIdentity = new HashMap<Long, ArrayDeque<Integer>>();
+        for (int index = 0; index < paired.length; index++) {
+            if (!paired[index]) {
+                byFingerprint.computeIfAbsent(actualTree.fingerprints[index], key -> new ArrayDeque<Integer>(1))
+                        .add(index);
+                byIdentity.computeIfAbsent((long) actualTree.spans[index].hashCode(),
+                        key -> new ArrayDeque<Integer>(1)).add(index);
+            }
+        }
+        pair(expectedTree, actualTree, pairs, paired, byFingerprint, true);
+        pair(expectedTree, actualTree, pairs, paired, byIdentity, false);
+        return pairs;
+    }
+
+    private static void pair(Tree expectedTree, Tree actualTree, int[] pairs, boolean[] paired,
+            Map<Long, ArrayDeque<Integer>> candidates, boolean byFingerprint) {
+        for (int index = 0; index < pairs.length; index++) {
+            if (pairs[index] >= 0) {
+                continue;
+            }
+            QESpan span = expectedTree.spans[index];
+            ArrayDeque<Integer> queue = candidates.get(byFingerprint ? expectedTree.fingerprints[index]
+                    : (long) span.hashCode());
+            while (queue != null && !queue.isEmpty()) {
+                int match = queue.poll();
+                //Left over from an earlier pass, or a hash collision
+                if (!paired[match] && (!byFingerprint || span.equals(actualTree.spans[match]))) {
+                    pairs[index] = match;
+                    paired[match] = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    //Walks the expected spans top-down, skipping subtrees identical to the ones they are paired with
+    private void check(Tree expectedTree, Tree actualTree, int[] pairs) {
+        ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+        for (int index = 0; index < expectedTree.size(); index++) {
+            if (expectedTree.parents[index] < 0) {
+                pending.push(index);
+            }
+        }
+        while (!pending.isEmpty()) {
+            int index = pending.pop();
+            int match = pairs[index];
+            if (match >= 0) {
+                QESpan expectedSpan = expectedTree.spans[index];
+                QESpan actualSpan = actualTree.spans[match];
+                int expectedParent = expectedTree.parents[index];
+                //A missing parent is reported as missing already
+                if (expectedParent < 0 || pairs[expectedParent] >= 0) {
+                    int parentMatch = expectedParent < 0 ? -1 : pairs[expectedParent];
+                    if (parentMatch != actualTree.parents[match]) {
+                        reparented.add(new SpanPair(expectedSpan, actualSpan));
+                    }
+                }
+                //The span and its descendants are equal to the actual ones, trusting the hashes
+                if (expectedTree.subtreeHashes[index] == actualTree.subtreeHashes[match]) {
+                    continue;
+                }
+                if (!expectedSpan.equals(actualSpan)) {
+                    mismatched.add(new SpanPair(expectedSpan, actualSpan));
+                }
+            }
+            for (int child = expectedTree.firstChild[index]; child >= 0; child = expectedTree.nextSibling[child]) {
+                pending.push(child);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("TraceDiff(");
+        append(builder, "missing", missing);
+        append(builder.append(", "), "extra", extra);
+        append(builder.append(", "), "reparented", reparented);
+        append(builder.append(", "), "mismatched", mismatched);
+        return builder.append(')').toString();
+    }
+
+    private static void append(StringBuilder builder, String name, List<?> items) {
+        builder.append(name).append('=').append(items.size());
+        for (int index = 0; index < Math.min(items.size(), TO_STRING_LIMIT); index++) {
+            Object item = items.get(index);
+            builder.append(index == 0 ? " [" : ", ")
+                    .append(item instanceof QESpan ? describe((QESpan) item) : item.toString());
+        }
+        if (!items.isEmpty()) {
+            builder.append(items.size() > TO_STRING_LIMIT ? ", ...]" : "]");
+        }
+    }
+
+    //QESpan.toString() prints the parents too
+    private static String describe(QESpan span) {
+        return span.getOperation() + "(" + span.getSpanId() + ")@" + span.getStart();
+    }
+
+    //Spans of a trace as arrays of indexes: parent, first child and next sibling, -1 for none
+    private static class Tree {
+        private final QESpan[] spans;
+        private final int[] parents;
+        private final int[] firstChild;
+        private final int[] nextSibling;
+        private final long[] fingerprints;
+        private final long[] subtreeHashes;
+        //Every span reachable from a root
+        private boolean acyclic = true;
+
+        private Tree(Collection<QESpan> collection) {
+            spans = collection.toArray(new QESpan[collection.size()]);
+            parents = new int[spans.length];
+            firstChild = new int[spans.length];
+            nextSibling = new int[spans.length];
+            fingerprints = new long[spans.length];
+            subtreeHashes = new long[spans.length];
+            Arrays.fill(firstChild, -1);
+            Arrays.fill(nextSibling, -1);
+            //QESpan.equals compares content, spans are told apart by identity
+            Map<QESpan, Integer> indexes = new IdentityHashMap<QESpan, Integer>(spans.length);
+            for (int index = 0; index < spans.length; index++) {
+                indexes.put(spans[index], index);
+            }
+            for (int index = spans.length - 1; index >= 0; index--) {
+                //A parent outside the collection makes a root
+                Integer parent = spans[index].getParent() == null ? null : indexes.get(spans[index].getParent());
+                parents[index] = parent == null ? -1 : parent;
+                if (parent != null) {
+                    nextSibling[index] = firstChild[parent];
+                    firstChild[parent] = index;
+                }
+                fingerprints[index] = spans[index].fingerprint();
+            }
+            hashSubtrees();
+        }
+
+        //Children before parents: breadth first from the roots, in reverse
+        private void hashSubtrees() {
+            int[] order = new int[spans.length];
+            boolean[] queued = new boolean[spans.length];
+            int size = 0;
+            for (int index = 0; index < spans.length; index++) {
+                if (parents[index] < 0) {
+                    order[size++] = index;
+                    queued[index] = true;
+                }
+            }
+            for (int head = 0; head < size; head++) {
+                for (int child = firstChild[order[head]]; child >= 0; child = nextSibling[child]) {
+                    order[size++] = child;
+                    queued[child] = true;
+                }
+            }
+            //Spans in a parent cycle are not reachable from a root, hashed on their own
+            for (int index = 0; index < spans.length && size < spans.length; index++) {
+                if (!queued[index]) {
+                    order[size++] = index;
+                    acyclic = false;
+                }
+            }
+            long[] childrenHashes = new long[spans.length];
+            for (int position = spans.length - 1; position >= 0; position--) {
+                int index = order[position];
+                //Summed, so the order of the children does not matter
+                subtreeHashes[index] = Hashes.mix(fingerprints[index] ^ Hashes.mix(childrenHashes[index]));
+                if (parents[index] >= 0 && queued[index]) {
+                    childrenHashes[parents[index]] += subtreeHashes[index];
+                }
+            }
+        }
+
+        private long[] rootHashes() {
+            long[] hashes = new long[spans.length];
+            int size = 0;
+            for (int index = 0; index < spans.length; index++) {
+                if (parents[index] < 0) {
+                    hashes[size++] = subtreeHashes[index];
+                }
+            }
+            hashes = Arrays.copyOf(hashes, size);
+            Arrays.sort(hashes);
+            return hashes;
+        }
+
+        private int size() {
+            return spans.length;
+        }
+    }
+}
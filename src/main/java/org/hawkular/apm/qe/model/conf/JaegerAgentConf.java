@@ -16,6 +16,9 @@
  */
 package org.hawkular.apm.qe.model.conf;
 
+import java.util.Collections;
+import java.util.List;
+
 import lombok.Builder;
 import lombok.Data;
 import lombok.ToString;
@@ -23,14 +26,104 @@ import lombok.ToString;
 /**
  * @author Jeeva Kandasamy (jkandasa)
  */
-@Builder
+@Builder(toBuilder = true)
 @Data
 @ToString
 public class JaegerAgentConf {
+    public enum SENDER_TYPE {
+        //Compact Thrift batches to the agent, over UDP
+        UDP,
+        //Binary Thrift batches straight to the collector, over HTTP
+        HTTP;
+    }
+
+    public enum SAMPLER_TYPE {
+        //Samples each trace with the sampling rate
+        PROBABILISTIC,
+        //Samples up to max traces per second
+        RATE_LIMITING,
+        //Probabilistic, and at least lower bound traces per second
+        GUARANTEED_THROUGHPUT,
+        //Strategy polled from the sampling server, probabilistic with the sampling rate until it answers
+        REMOTE;
+    }
+
+    private SENDER_TYPE sender;
+    private SAMPLER_TYPE sampler;
     private String host;
     private Integer port;
+    //host:port of several agents, in place of host and port. The UDP sender shards the spans over them by trace
+    private List<String> agents;
     private Integer flushInterval;
+    //Milliseconds a flush or close waits at most for the queued spans to be sent
+    private Integer flushTimeout;
     private Integer packetSize;
     private Integer queueSize;
     private Double samplingRate;
+    //Traces per second of the rate limiting sampler
+    private Integer maxTracesPerSecond;
+    //Traces per second sampled at least by the guaranteed throughput sampler
+    private Double lowerBound;
+    //host:port of the sampling strategy endpoint, used by the remote sampler
+    private String samplingServer;
+    //Socket send buffer size in bytes of the UDP sender, 0 keeps the OS default
+    private Integer sendBufferSize;
+    //Zipkin compatible span endpoint of the collector, used by the HTTP sender
+    private String collectorUrl;
+
+    public SENDER_TYPE getSender() {
+        if (sender == null) {
+            return SENDER_TYPE.UDP;
+        }
+        return sender;
+    }
+
+    public List<String> getAgents() {
+        if (agents == null) {
+            return Collections.emptyList();
+        }
+        return agents;
+    }
+
+    public Integer getFlushTimeout() {
+        if (flushTimeout == null) {
+            return 10000;
+        }
+        return flushTimeout;
+    }
+
+    public SAMPLER_TYPE getSampler() {
+        if (sampler == null) {
+            return SAMPLER_TYPE.PROBABILISTIC;
+        }
+        return sampler;
+    }
+
+    public Double getSamplingRate() {
+        if (samplingRate == null) {
+            return 1.0;
+        }
+        return samplingRate;
+    }
+
+    public Integer getMaxTracesPerSecond() {
+        if (maxTracesPerSecond == null) {
+            return 100;
+        }
+        return maxTracesPerSecond;
+    }
+
+    public Double getLowerBound() {
+        if (lowerBound == null) {
+            return 1.0;
+        }
+        return lowerBound;
+    }
+
+    public String getSamplingServer() {
+        if (samplingServer == null) {
+            return (host == null ? "localhost" : host) + ":5778";
+        }
+        return samplingServer;
+    }
 }
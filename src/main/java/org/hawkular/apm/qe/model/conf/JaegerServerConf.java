@@ -30,6 +30,14 @@ public class JaegerServerConf {
     private String protocol = "http";
     private String host;
     private Integer restPort;
+    //How long to wait for data to become visible on queries, in milliseconds
+    private Integer queryTimeout;
+    //Max number of traces a query returns, the query service returns 100 when not given
+    private Integer queryLimit;
+    //Queries in flight at once from the async server, also the number of keep-alive connections kept
+    private Integer queryConcurrency;
+    //How long services and operations lists are cached, in milliseconds
+    private Integer metadataTtl;
 
     public String getProtocol() {
         if (protocol == null) {
@@ -38,6 +46,20 @@ public class JaegerServerConf {
         return protocol;
     }
 
+    public Integer getQueryTimeout() {
+        if (queryTimeout == null) {
+            return 30000;
+        }
+        return queryTimeout;
+    }
+
+    public Integer getQueryConcurrency() {
+        if (queryConcurrency == null) {
+            return 16;
+        }
+        return queryConcurrency;
+    }
+
     public String getUrl() {
         return protocol + "://" + host + ":" + restPort;
     }
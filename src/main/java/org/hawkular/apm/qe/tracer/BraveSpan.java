@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tracer;
+
+import java.util.Map;
+
+import io.opentracing.Span;
+import io.opentracing.tag.Tags;
+
+/**
+ * OpenTracing span over a brave span. Zipkin tags are strings, other values are recorded as text; logs become
+ * annotations, the 'event' field when there is one, otherwise the fields as 'key=value' pairs.
+ *
+ * @author kearls
+ */
+public class BraveSpan implements Span {
+    private final brave.Span delegate;
+    private final BraveSpanContext context;
+
+    BraveSpan(brave.Span delegate, BraveSpanContext context) {
+        this.delegate = delegate;
+        this.context = context;
+    }
+
+    public brave.Span unwrap() {
+        return delegate;
+    }
+
+    @Override
+    public BraveSpanContext context() {
+        return context;
+    }
+
+    @Override
+    public void finish() {
+        delegate.finish();
+    }
+
+    @Override
+    public void finish(long finishMicros) {
+        delegate.finish(finishMicros);
+    }
+
+    @Override
+    public void close() {
+        finish();
+    }
+
+    @Override
+    public Span setTag(String key, String value) {
+        tag(delegate, key, value);
+        return this;
+    }
+
+    @Override
+    public Span setTag(String key, boolean value) {
+        tag(delegate, key, String.valueOf(value));
+        return this;
+    }
+
+    @Override
+    public Span setTag(String key, Number value) {
+        tag(delegate, key, String.valueOf(value));
+        return this;
+    }
+
+    //span.kind is the kind of the zipkin span, not a tag
+    static void tag(brave.Span span, String key, String value) {
+        if (Tags.SPAN_KIND.getKey().equals(key) && Tags.SPAN_KIND_SERVER.equals(value)) {
+            span.kind(brave.Span.Kind.SERVER);
+        } else if (Tags.SPAN_KIND.getKey().equals(key) && Tags.SPAN_KIND_CLIENT.equals(value)) {
+            span.kind(brave.Span.Kind.CLIENT);
+        } else {
+            span.tag(key, value);
+        }
+    }
+
+    @Override
+    public Span log(Map<String, ?> fields) {
+        delegate.annotate(annotation(fields));
+        return this;
+    }
+
+    @Override
+    public Span log(long timestampMicros, Map<String, ?> fields) {
+        delegate.annotate(timestampMicros, annotation(fields));
+        return this;
+    }
+
+    private static String annotation(Map<String, ?> fields) {
+        Object event = fields.get("event");
+        if (event != null && fields.size() == 1) {
+            return event.toString();
+        }
+        StringBuilder annotation = new StringBuilder();
+        for (Map.Entry<String, ?> field : fields.entrySet()) {
+            if (annotation.length() > 0) {
+                annotation.append(' ');
+            }
+            annotation.append(field.getKey()).append('=').append(field.getValue());
+        }
+        return annotation.toString();
+    }
+
+    @Override
+    public Span log(String event) {
+        delegate.annotate(event);
+        return this;
+    }
+
+    @Override
+    public Span log(long timestampMicros, String event) {
+        delegate.annotate(timestampMicros, event);
+        return this;
+    }
+
+    @Override
+    public Span setBaggageItem(String key, String value) {
+        context.setBaggageItem(key, value);
+        return this;
+    }
+
+    @Override
+    public String getBaggageItem(String key) {
+        return context.getBaggageItem(key);
+    }
+
+    @Override
+    public Span setOperationName(String operationName) {
+        delegate.name(operationName);
+        return this;
+    }
+
+    @Override
+    @Deprecated
+    public Span log(String eventName, Object payload) {
+        delegate.annotate(eventName);
+        return this;
+    }
+
+    @Override
+    @Deprecated
+    public Span log(long timestampMicros, String eventName, Object payload) {
+        delegate.annotate(timestampMicros, eventName);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
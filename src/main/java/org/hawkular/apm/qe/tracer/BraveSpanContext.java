@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tracer;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import brave.propagation.TraceContext;
+import io.opentracing.SpanContext;
+
+/**
+ * Brave trace context of a {@link BraveSpan} and its baggage. Baggage is copied on write: children share the
+ * map of their parent until they change it.
+ *
+ * @author kearls
+ */
+public class BraveSpanContext implements SpanContext {
+    private final TraceContext context;
+    private volatile Map<String, String> baggage;
+
+    BraveSpanContext(TraceContext context, Map<String, String> baggage) {
+        this.context = context;
+        this.baggage = baggage;
+    }
+
+    public TraceContext unwrap() {
+        return context;
+    }
+
+    Map<String, String> getBaggage() {
+        return baggage;
+    }
+
+    String getBaggageItem(String key) {
+        return baggage.get(key);
+    }
+
+    synchronized void setBaggageItem(String key, String value) {
+        Map<String, String> items = new HashMap<String, String>(baggage);
+        items.put(key, value);
+        baggage = Collections.unmodifiableMap(items);
+    }
+
+    @Override
+    public Iterable<Map.Entry<String, String>> baggageItems() {
+        return baggage.entrySet();
+    }
+
+    @Override
+    public String toString() {
+        return context.toString();
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tracer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import brave.Tracing;
+import brave.propagation.Propagation;
+import brave.propagation.TraceContext;
+import brave.propagation.TraceContextOrSamplingFlags;
+import io.opentracing.References;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMap;
+
+/**
+ * OpenTracing 0.20 tracer over Brave 4. The brave-opentracing releases for this API sit on Brave 3, which keeps
+ * one local span per thread and loses a parent finished after its child; Brave 4 passes the trace context
+ * explicitly. The context is propagated as B3 headers, baggage as 'baggage-' prefixed entries. As jaeger-core,
+ * a span keeps its first reference as the parent, CHILD_OF or FOLLOWS_FROM.
+ *
+ * @author kearls
+ */
+public class BraveTracer implements Tracer {
+    static final String BAGGAGE_PREFIX = "baggage-";
+
+    private final Tracing tracing;
+    private final brave.Tracer tracer;
+    private final TraceContext.Injector<TextMap> injector;
+    private final TraceContext.Extractor<Map<String, String>> extractor;
+
+    public BraveTracer(Tracing tracing) {
+        this.tracing = tracing;
+        this.tracer = tracing.tracer();
+        this.injector = tracing.propagation().injector(TextMap::put);
+        this.extractor = tracing.propagation().extractor(Map::get);
+    }
+
+    public Tracing unwrap() {
+        return tracing;
+    }
+
+    @Override
+    public SpanBuilder buildSpan(String operationName) {
+        return new BraveSpanBuilder(operationName);
+    }
+
+    @Override
+    public <C> void inject(SpanContext spanContext, Format<C> format, C carrier) {
+        if (!(carrier instanceof TextMap)) {
+            throw new IllegalArgumentException("Unsupported format " + format);
+        }
+        BraveSpanContext context = (BraveSpanContext) spanContext;
+        TextMap textMap = (TextMap) carrier;
+        injector.inject(context.unwrap(), textMap);
+        for (Map.Entry<String, String> item : context.getBaggage().entrySet()) {
+            textMap.put(BAGGAGE_PREFIX + item.getKey(), item.getValue());
+        }
+    }
+
+    @Override
+    public <C> SpanContext extract(Format<C> format, C carrier) {
+        if (!(carrier instanceof TextMap)) {
+            throw new IllegalArgumentException("Unsupported format " + format);
+        }
+        //One pass over the carrier, header names are case insensitive
+        Map<String, String> b3 = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, String> baggage = Collections.emptyMap();
+        for (Map.Entry<String, String> entry : (TextMap) carrier) {
+            if (entry.getKey().regionMatches(true, 0, BAGGAGE_PREFIX, 0, BAGGAGE_PREFIX.length())) {
+                if (baggage.isEmpty()) {
+                    baggage = new HashMap<String, String>();
+                }
+                baggage.put(entry.getKey().substring(BAGGAGE_PREFIX.length()), entry.getValue());
+            } else {
+                b3.put(entry.getKey(), entry.getValue());
+            }
+        }
+        TraceContextOrSamplingFlags extracted = extractor.extract(b3);
+        if (extracted.context() == null) {
+            return null;
+        }
+        return new BraveSpanContext(extracted.context(),
+                baggage.isEmpty() ? baggage : Collections.unmodifiableMap(baggage));
+    }
+
+    @Override
+    public String toString() {
+        return "BraveTracer(" + tracer + ")";
+    }
+
+    private class BraveSpanBuilder implements SpanBuilder {
+        private final String operationName;
+        private BraveSpanContext parent;
+        private List<String> tags;
+        private long startMicros;
+
+        private BraveSpanBuilder(String operationName) {
+            this.operationName = operationName;
+        }
+
+        @Override
+        public SpanBuilder asChildOf(SpanContext parent) {
+            return addReference(References.CHILD_OF, parent);
+        }
+
+        @Override
+        public SpanBuilder asChildOf(Span parent) {
+            return addReference(References.CHILD_OF, parent.context());
+        }
+
+        @Override
+        public SpanBuilder addReference(String referenceType, SpanContext referencedContext) {
+            if (parent == null && referencedContext instanceof BraveSpanContext) {
+                parent = (BraveSpanContext) referencedContext;
+            }
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, String value) {
+            if (tags == null) {
+                tags = new ArrayList<String>(8);
+            }
+            //Keys and values in turn
+            tags.add(key);
+            tags.add(value);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, boolean value) {
+            return withTag(key, String.valueOf(value));
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, Number value) {
+            return withTag(key, String.valueOf(value));
+        }
+
+        @Override
+        public SpanBuilder withStartTimestamp(long microseconds) {
+            this.startMicros = microseconds;
+            return this;
+        }
+
+        @Override
+        public Span start() {
+            brave.Span span = parent == null ? tracer.newTrace() : tracer.newChild(parent.unwrap());
+            span.name(operationName);
+            if (tags != null) {
+                for (int index = 0; index < tags.size(); index += 2) {
+                    BraveSpan.tag(span, tags.get(index), tags.get(index + 1));
+                }
+            }
+            if (startMicros == 0) {
+                span.start();
+            } else {
+                span.start(startMicros);
+            }
+            Map<String, String> baggage = parent == null ? Collections.<String, String> emptyMap()
+                    : parent.getBaggage();
+            return new BraveSpan(span, new BraveSpanContext(span.context(), baggage));
+        }
+
+        //The builder is no context of its own
+        @Override
+        public Iterable<Map.Entry<String, String>> baggageItems() {
+            return Collections.<String, String> emptyMap().entrySet();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tracer;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.uber.jaeger.metrics.Metrics;
+import com.uber.jaeger.metrics.StatsReporter;
+
+/**
+ * In-memory {@link StatsReporter} which can be updated from many threads at a time. Jaeger's own
+ * InMemoryStatsReporter uses plain HashMaps, which are updated by the reporter thread and by every thread
+ * that finishes a span.
+ *
+ * @author kearls
+ */
+public class ConcurrentStatsReporter implements StatsReporter {
+    //Metric names as generated by Metrics
+    public static final String SPANS_STARTED = "jaeger.spans.group=lifecycle.state=started";
+    public static final String SPANS_FINISHED = "jaeger.spans.group=lifecycle.state=finished";
+    public static final String TRACES_STARTED = "jaeger.traces.sampled=y.state=started";
+    public static final String REPORTER_SUCCESS = "jaeger.reporter-spans.state=success";
+    public static final String REPORTER_FAILURE = "jaeger.reporter-spans.state=failure";
+    public static final String REPORTER_DROPPED = "jaeger.spans.state=dropped";
+    public static final String REPORTER_QUEUE = "jaeger.reporter-queue";
+    public static final String DECODING_ERRORS = "jaeger.decoding-errors";
+    //Flushes asked for through ITracer, a timer in microseconds, the spans they drained and the ones timed out
+    public static final String FLUSH = "qe.tracer-flush";
+    public static final String FLUSH_SPANS = "qe.tracer-flush-spans";
+    public static final String FLUSH_TIMEOUTS = "qe.tracer-flush-timeouts";
+    //Spans of a ShardedSender by endpoint and state, sent or dropped
+    public static final String ENDPOINT_SPANS = "qe.endpoint-spans";
+    private static final Map<String, String> NO_TAGS = Collections.emptyMap();
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+    private final Map<String, AtomicLong> gauges = new ConcurrentHashMap<String, AtomicLong>();
+
+    @Override
+    public void incCounter(String name, long delta, Map<String, String> tags) {
+        counters.computeIfAbsent(Metrics.addTagsToMetricName(name, tags), key -> new LongAdder()).add(delta);
+    }
+
+    @Override
+    public void recordTimer(String name, long time, Map<String, String> tags) {
+        String metricName = Metrics.addTagsToMetricName(name, tags);
+        counters.computeIfAbsent(metricName + ".count", key -> new LongAdder()).increment();
+        counters.computeIfAbsent(metricName + ".total", key -> new LongAdder()).add(time);
+    }
+
+    @Override
+    public void updateGauge(String name, long amount, Map<String, String> tags) {
+        gauges.computeIfAbsent(Metrics.addTagsToMetricName(name, tags), key -> new AtomicLong()).set(amount);
+    }
+
+    public long getCounter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0L : counter.sum();
+    }
+
+    public long getGauge(String name) {
+        AtomicLong gauge = gauges.get(name);
+        return gauge == null ? 0L : gauge.get();
+    }
+
+    public void recordFlush(FlushResult result) {
+        recordTimer(FLUSH, result.getElapsed(), NO_TAGS);
+        incCounter(FLUSH_SPANS, result.getDrained(), NO_TAGS);
+        if (!result.getComplete()) {
+            incCounter(FLUSH_TIMEOUTS, 1, NO_TAGS);
+        }
+    }
+
+    /**
+     * Copies all the metrics. Counters are read one by one while other threads may update them, a snapshot is
+     * exact only when the tracer is idle.
+     */
+    public MetricsSnapshot snapshot() {
+        Map<String, Long> counterValues = new TreeMap<String, Long>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.sum()));
+        Map<String, Long> gaugeValues = new TreeMap<String, Long>();
+        gauges.forEach((name, gauge) -> gaugeValues.put(name, gauge.get()));
+        return new MetricsSnapshot(System.currentTimeMillis(), counterValues, gaugeValues);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tracer;
+
+import lombok.Builder;
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * Outcome of {@link ITracer#flush(long)} or {@link ITracer#close(long)}.
+ *
+ * @author kearls
+ */
+@Builder
+@Data
+@ToString
+public class FlushResult {
+    //Spans sent by the flush: queued when it was asked for, or buffered by the sender
+    private Long drained;
+    //Microseconds from the call to the spans being sent, or to the timeout
+    private Long elapsed;
+    //False if the timeout expired first, spans may still be queued
+    private Boolean complete;
+
+    //Nothing to flush, a tracer not created yet or already closed
+    public static FlushResult empty() {
+        return FlushResult.builder().drained(0L).elapsed(0L).complete(true).build();
+    }
+}
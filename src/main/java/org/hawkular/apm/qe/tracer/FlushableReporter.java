@@ -0,0 +1,258 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tracer;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.uber.jaeger.Span;
+import com.uber.jaeger.exceptions.SenderException;
+import com.uber.jaeger.metrics.Metrics;
+import com.uber.jaeger.reporters.Reporter;
+import com.uber.jaeger.reporters.protocols.ThriftSpanConverter;
+import com.uber.jaeger.senders.Sender;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reporter queueing spans for a single sender thread, as Jaeger's RemoteReporter does, which can also be flushed
+ * on demand: {@link #flush(long)} waits until the spans reported before it are sent, for a timeout at most. Close
+ * flushes with the same bound, where RemoteReporter waits for its thread without one.
+ *
+ * Spans reported to a full queue or after close are counted as dropped; RemoteReporter throws when its queue
+ * fills up between its size check and the append. A span reported while the reporter closes is queued before the
+ * close and sent, or queued after it and dropped, never both or neither.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class FlushableReporter implements Reporter {
+    //Names of the sender thread and of the flush timer thread
+    public static final String THREAD_NAME = "jaeger-qe-reporter";
+    public static final String TIMER_THREAD_NAME = "jaeger-qe-flush-timer";
+    private final Sender sender;
+    private final int maxQueueSize;
+    private final long closeTimeout;
+    private final Metrics metrics;
+    private final ConcurrentStatsReporter statsReporter;
+    private final BlockingQueue<Command> commands = new LinkedBlockingQueue<Command>();
+    //Spans in the queue, which also holds flushes
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Timer flushTimer = new Timer(TIMER_THREAD_NAME, true);
+    private final Thread processor;
+    //Spans the sender sent so far, updated by the processor thread only
+    private volatile long sent = 0L;
+    private volatile boolean closed = false;
+
+    /**
+     * Flush interval and close timeout in milliseconds. Flush metrics go to the stats reporter, the others to the
+     * Jaeger metrics.
+     */
+    public FlushableReporter(Sender sender, int flushInterval, int maxQueueSize, long closeTimeout, Metrics metrics,
+            ConcurrentStatsReporter statsReporter) {
+        this.sender = sender;
+        this.maxQueueSize = maxQueueSize;
+        this.closeTimeout = closeTimeout;
+        this.metrics = metrics;
+        this.statsReporter = statsReporter;
+        processor = new Thread(this::process, THREAD_NAME);
+        processor.setDaemon(true);
+        processor.start();
+        flushTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                metrics.reporterQueueLength.update(queued.get());
+                commands.add(new Flush());
+            }
+        }, flushInterval, flushInterval);
+    }
+
+    @Override
+    public void report(Span span) {
+        if (closed) {
+            metrics.reporterDropped.inc(1);
+            return;
+        }
+        if (queued.incrementAndGet() > maxQueueSize) {
+            queued.decrementAndGet();
+            metrics.reporterDropped.inc(1);
+            return;
+        }
+        Append append = new Append(ThriftSpanConverter.convertSpan(span));
+        commands.add(append);
+        //Closed since the check: the processor may have drained the queue already. Whichever of it and this
+        //takes the span off the queue drops it, unless it was sent first
+        if (closed && commands.remove(append)) {
+            append.drop();
+        }
+    }
+
+    /**
+     * Sends the spans reported so far, waiting for the timeout in milliseconds at most.
+     */
+    public FlushResult flush(long timeout) {
+        if (closed) {
+            return FlushResult.empty();
+        }
+        return await(new Flush(), timeout);
+    }
+
+    /**
+     * Flushes, then closes the sender. Waits for the timeout in milliseconds at most, and stops the sender thread
+     * once it expires, leaving the spans still queued.
+     */
+    public synchronized FlushResult close(long timeout) {
+        long start = System.nanoTime();
+        long before = sent;
+        if (closed) {
+            return FlushResult.empty();
+        }
+        Close close = new Close();
+        closed = true;
+        commands.add(close);
+        flushTimer.cancel();
+        FlushResult result = await(close, start, before, timeout);
+        if (!result.getComplete()) {
+            _logger.warn("Reporter not flushed in {} ms, {} spans left in the queue", timeout, queued.get());
+            processor.interrupt();
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        close(closeTimeout);
+    }
+
+    private FlushResult await(Flush flush, long timeout) {
+        long start = System.nanoTime();
+        long before = sent;
+        commands.add(flush);
+        return await(flush, start, before, timeout);
+    }
+
+    //Flush queued at start, with the spans sent before
+    private FlushResult await(Flush flush, long start, long before, long timeout) {
+        boolean complete;
+        try {
+            complete = flush.done.await(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            complete = false;
+        }
+        FlushResult result = FlushResult.builder()
+                .drained((complete ? flush.sentAfter : sent) - before)
+                .elapsed(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start))
+                .complete(complete)
+                .build();
+        statsReporter.recordFlush(result);
+        return result;
+    }
+
+    private void process() {
+        boolean open = true;
+        while (open) {
+            Command command;
+            try {
+                command = commands.take();
+            } catch (InterruptedException ex) {
+                break;
+            }
+            open = !(command instanceof Close);
+            try {
+                command.execute();
+            } catch (SenderException ex) {
+                metrics.reporterFailure.inc(ex.getDroppedSpanCount());
+            } catch (RuntimeException ex) {
+                _logger.error("Reporter command failed,", ex);
+            }
+        }
+        //Reported or flushed while closing, after the close command, or left by an interrupt
+        for (Command command = commands.poll(); command != null; command = commands.poll()) {
+            if (command instanceof Flush) {
+                ((Flush) command).release();
+            } else {
+                ((Append) command).drop();
+            }
+        }
+    }
+
+    private void sent(int count) {
+        metrics.reporterSuccess.inc(count);
+        sent += count;
+    }
+
+    private interface Command {
+        void execute() throws SenderException;
+    }
+
+    private class Append implements Command {
+        private final com.twitter.zipkin.thriftjava.Span span;
+
+        private Append(com.twitter.zipkin.thriftjava.Span span) {
+            this.span = span;
+        }
+
+        @Override
+        public void execute() throws SenderException {
+            queued.decrementAndGet();
+            sent(sender.append(span));
+        }
+
+        //Taken off the queue without being sent
+        private void drop() {
+            queued.decrementAndGet();
+            metrics.reporterDropped.inc(1);
+        }
+    }
+
+    private class Flush implements Command {
+        private final CountDownLatch done = new CountDownLatch(1);
+        //Spans sent when the flush completed, before the spans reported after it
+        private volatile long sentAfter;
+
+        @Override
+        public void execute() throws SenderException {
+            try {
+                sent(send());
+            } finally {
+                release();
+            }
+        }
+
+        private void release() {
+            sentAfter = sent;
+            done.countDown();
+        }
+
+        protected int send() throws SenderException {
+            return sender.flush();
+        }
+    }
+
+    private class Close extends Flush {
+        @Override
+        protected int send() throws SenderException {
+            return sender.close();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tracer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.uber.jaeger.samplers.ProbabilisticSampler;
+import com.uber.jaeger.samplers.Sampler;
+import com.uber.jaeger.utils.RateLimiter;
+
+/**
+ * Probabilistic sampling with a guaranteed minimum: a trace the probabilistic sampler leaves out is still sampled
+ * while fewer than lower bound traces per second were. Jaeger applies this per operation; the samplers of
+ * jaeger-core 0.17 only get the trace id, so here the guarantee is for the whole service.
+ *
+ * @author kearls
+ */
+public class GuaranteedThroughputSampler implements Sampler {
+    public static final String TYPE = "lowerbound";
+
+    private final ProbabilisticSampler probabilisticSampler;
+    //Not thread safe, used under its own lock
+    private final RateLimiter lowerBoundLimiter;
+    private final double samplingRate;
+    private final double lowerBound;
+    private final Map<String, Object> tags;
+
+    public GuaranteedThroughputSampler(double samplingRate, double lowerBound) {
+        this.probabilisticSampler = new ProbabilisticSampler(samplingRate);
+        this.lowerBoundLimiter = new RateLimiter(lowerBound);
+        this.samplingRate = samplingRate;
+        this.lowerBound = lowerBound;
+        Map<String, Object> tags = new HashMap<String, Object>();
+        tags.put("sampler.type", TYPE);
+        tags.put("sampler.param", samplingRate);
+        this.tags = tags;
+    }
+
+    @Override
+    public boolean isSampled(long id) {
+        boolean sampled = probabilisticSampler.isSampled(id);
+        //Traces sampled either way count against the lower bound, as in Jaeger
+        synchronized (lowerBoundLimiter) {
+            return lowerBoundLimiter.checkCredit(1.0) || sampled;
+        }
+    }
+
+    @Override
+    public Map<String, Object> getTags() {
+        return tags;
+    }
+
+    @Override
+    public void close() {
+        probabilisticSampler.close();
+    }
+
+    @Override
+    public String toString() {
+        return "GuaranteedThroughputSampler(samplingRate=" + samplingRate + ", lowerBound=" + lowerBound + ")";
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tracer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TIOStreamTransport;
+
+/**
+ * Posts batches of spans straight to the collector, bypassing the agent, as a binary Thrift list of zipkin spans
+ * (the zipkin compatible endpoint, '/api/v1/spans'). Connections are kept alive between batches.
+ *
+ * @author kearls
+ */
+public class HTTPCollectorSender extends ThriftBatchSender {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1024 * 1024;
+    //List header, element type and size
+    private static final int BATCH_OVERHEAD = 5;
+
+    private final URL collectorUrl;
+    private final int maxBatchSize;
+    private final ByteArrayOutputStream bodyBuffer = new ByteArrayOutputStream();
+    private final TProtocol bodyProtocol = createProtocol(new TIOStreamTransport(bodyBuffer));
+
+    /**
+     * @param maxBatchSize max request body size, 0 for {@link #DEFAULT_MAX_BATCH_SIZE}
+     */
+    public HTTPCollectorSender(String collectorUrl, int maxBatchSize) throws IOException {
+        this.collectorUrl = new URL(collectorUrl);
+        this.maxBatchSize = maxBatchSize == 0 ? DEFAULT_MAX_BATCH_SIZE : maxBatchSize;
+    }
+
+    @Override
+    protected TProtocol createProtocol(TIOStreamTransport transport) {
+        return new TBinaryProtocol(transport);
+    }
+
+    @Override
+    protected int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    @Override
+    protected int getBatchOverhead() {
+        return BATCH_OVERHEAD;
+    }
+
+    @Override
+    protected void send(List<byte[]> spans, int size) throws Exception {
+        bodyBuffer.reset();
+        bodyProtocol.writeListBegin(new TList(TType.STRUCT, spans.size()));
+        for (byte[] span : spans) {
+            bodyBuffer.write(span);
+        }
+        bodyProtocol.writeListEnd();
+
+        HttpURLConnection connection = (HttpURLConnection) collectorUrl.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/x-thrift");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(bodyBuffer.size());
+        try (OutputStream out = connection.getOutputStream()) {
+            bodyBuffer.writeTo(out);
+        }
+        int status = connection.getResponseCode();
+        //Drain the response, the connection goes back to the keep-alive pool
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (in != null) {
+                byte[] discard = new byte[512];
+                while (in.read(discard) != -1) {
+                    continue;
+                }
+            }
+        }
+        if (status >= 300) {
+            throw new IOException("Collector responded with status " + status);
+        }
+    }
+
+    @Override
+    protected void closeTransport() {
+        //Keep-alive connections are owned by the JDK
+    }
+
+    @Override
+    public String toString() {
+        return "HTTPCollectorSender(collectorUrl=" + collectorUrl + ", maxBatchSize=" + maxBatchSize + ")";
+    }
+}
@@ -23,4 +23,19 @@ import io.opentracing.Tracer;
  */
 public interface ITracer {
     Tracer getTracer();
+
+    //Current client side metrics of the tracer
+    MetricsSnapshot getMetrics();
+
+    /*
+     * Sends the spans finished so far and waits until they are sent, for the timeout in milliseconds at most.
+     * Lets tests and load runs sync on the client instead of sleeping for a flush interval.
+     */
+    FlushResult flush(long timeout);
+
+    /*
+     * Flushes, then stops the tracer; spans finished later are dropped. Also done by a shutdown hook, with the
+     * agent's flush timeout, so that spans still queued at JVM exit are sent.
+     */
+    FlushResult close(long timeout);
 }
@@ -16,18 +16,22 @@
  */
 package org.hawkular.apm.qe.tracer;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.hawkular.apm.qe.JaegerQEBase;
 import org.hawkular.apm.qe.model.conf.JaegerAgentConf;
 
 import com.uber.jaeger.metrics.Metrics;
-import com.uber.jaeger.metrics.NullStatsReporter;
 import com.uber.jaeger.metrics.StatsFactoryImpl;
-import com.uber.jaeger.reporters.RemoteReporter;
 import com.uber.jaeger.reporters.Reporter;
+import com.uber.jaeger.samplers.HTTPSamplingManager;
 import com.uber.jaeger.samplers.ProbabilisticSampler;
+import com.uber.jaeger.samplers.RateLimitingSampler;
+import com.uber.jaeger.samplers.RemoteControlledSampler;
 import com.uber.jaeger.samplers.Sampler;
 import com.uber.jaeger.senders.Sender;
-import com.uber.jaeger.senders.UDPSender;
 
 import io.opentracing.Tracer;
 import lombok.extern.slf4j.Slf4j;
@@ -40,7 +44,9 @@ import lombok.extern.slf4j.Slf4j;
 public class JaegerOpenTracing implements ITracer {
 
     private static JaegerOpenTracing _INSTANCE = new JaegerOpenTracing();
-    private Tracer tracer = null;
+    private volatile Tracer tracer = null;
+    private volatile FlushableReporter reporter = null;
+    private final ConcurrentStatsReporter statsReporter = new ConcurrentStatsReporter();
 
     private JaegerOpenTracing() {
 
@@ -52,18 +58,127 @@ public class JaegerOpenTracing implements ITracer {
 
     @Override
     public Tracer getTracer() {
+        if (tracer == null) {
+            createTracer();
+        }
+        return tracer;
+    }
+
+    private synchronized void createTracer() {
         if (tracer == null) {
             JaegerAgentConf agent = JaegerQEBase.getJaegerConf().getAgent();
-            _logger.info("creating tracer with {}", agent);
-            Sender sender = new UDPSender(agent.getHost(), agent.getPort(), agent.getPacketSize());
-            Metrics metrics = new Metrics(new StatsFactoryImpl(new NullStatsReporter()));
-            Reporter reporter = new RemoteReporter(sender, agent.getFlushInterval(), agent.getQueueSize(), metrics);
-            Sampler sampler = new ProbabilisticSampler(agent.getSamplingRate());
-            tracer = new com.uber.jaeger.Tracer.Builder(JaegerQEBase.getJaegerConf().getServiceName(), reporter,
-                    sampler)
-                    .build();
+            reporter = createReporter(agent, statsReporter);
+            tracer = createTracer(agent, JaegerQEBase.getJaegerConf().getServiceName(), statsReporter, reporter);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> close(agent.getFlushTimeout()),
+                    "jaeger-qe-shutdown"));
+        }
+    }
 
+    /**
+     * Creates a tracer of its own, for runs which need an agent configuration other than the shared tracer's.
+     * Close it to flush the spans still queued.
+     */
+    public static com.uber.jaeger.Tracer createTracer(JaegerAgentConf agent, String serviceName,
+            ConcurrentStatsReporter statsReporter) {
+        return createTracer(agent, serviceName, statsReporter, createReporter(agent, statsReporter));
+    }
+
+    /**
+     * Creates a tracer of its own reporting to the reporter, keep the reporter to flush the tracer.
+     */
+    public static com.uber.jaeger.Tracer createTracer(JaegerAgentConf agent, String serviceName,
+            ConcurrentStatsReporter statsReporter, Reporter reporter) {
+        _logger.info("creating tracer with {}", agent);
+        Metrics metrics = new Metrics(new StatsFactoryImpl(statsReporter));
+        Sampler sampler = createSampler(agent, serviceName, metrics);
+        return new com.uber.jaeger.Tracer.Builder(serviceName, reporter, sampler)
+                .withStatsReporter(statsReporter)
+                .build();
+    }
+
+    public static FlushableReporter createReporter(JaegerAgentConf agent, ConcurrentStatsReporter statsReporter) {
+        return new FlushableReporter(createSender(agent, statsReporter), agent.getFlushInterval(), agent.getQueueSize(),
+                agent.getFlushTimeout(), new Metrics(new StatsFactoryImpl(statsReporter)), statsReporter);
+    }
+
+    public static Sampler createSampler(JaegerAgentConf agent, String serviceName, Metrics metrics) {
+        switch (agent.getSampler()) {
+            case RATE_LIMITING:
+                return new RateLimitingSampler(agent.getMaxTracesPerSecond());
+            case GUARANTEED_THROUGHPUT:
+                return new GuaranteedThroughputSampler(agent.getSamplingRate(), agent.getLowerBound());
+            case REMOTE:
+                //Polls right away, then every minute
+                return new RemoteControlledSampler(serviceName, new HTTPSamplingManager(agent.getSamplingServer()),
+                        new ProbabilisticSampler(agent.getSamplingRate()), metrics);
+            case PROBABILISTIC:
+            default:
+                return new ProbabilisticSampler(agent.getSamplingRate());
         }
-        return tracer;
+    }
+
+    /**
+     * Sender of the agent configuration, sharded over the agents when there are several. Per agent counts go to the
+     * stats reporter.
+     */
+    public static Sender createSender(JaegerAgentConf agent, ConcurrentStatsReporter statsReporter) {
+        try {
+            switch (agent.getSender()) {
+                case HTTP:
+                    if (!agent.getAgents().isEmpty()) {
+                        _logger.warn("Agents {} not used by the HTTP sender", agent.getAgents());
+                    }
+                    //Packet size bounds the request body
+                    return new HTTPCollectorSender(agent.getCollectorUrl(), agent.getPacketSize());
+                case UDP:
+                default:
+                    if (!agent.getAgents().isEmpty()) {
+                        return createShardedSender(agent, statsReporter);
+                    }
+                    return createUDPSender(agent, agent.getHost(), agent.getPort());
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to create " + agent.getSender() + " sender", ex);
+        }
+    }
+
+    private static UDPAgentSender createUDPSender(JaegerAgentConf agent, String host, int port) throws IOException {
+        return new UDPAgentSender(host, port, agent.getPacketSize(),
+                agent.getSendBufferSize() == null ? 0 : agent.getSendBufferSize());
+    }
+
+    private static ShardedSender createShardedSender(JaegerAgentConf agent, ConcurrentStatsReporter statsReporter)
+            throws IOException {
+        List<UDPAgentSender> senders = new ArrayList<UDPAgentSender>();
+        for (String endpoint : agent.getAgents()) {
+            int separator = endpoint.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Agent not in host:port form: " + endpoint);
+            }
+            senders.add(createUDPSender(agent, endpoint.substring(0, separator),
+                    Integer.parseInt(endpoint.substring(separator + 1))));
+        }
+        return new ShardedSender(agent.getAgents(), senders, statsReporter);
+    }
+
+    @Override
+    public FlushResult flush(long timeout) {
+        FlushableReporter current = reporter;
+        return current == null ? FlushResult.empty() : current.flush(timeout);
+    }
+
+    @Override
+    public FlushResult close(long timeout) {
+        FlushableReporter current = reporter;
+        return current == null ? FlushResult.empty() : current.close(timeout);
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return statsReporter.snapshot();
+    }
+
+    public ConcurrentStatsReporter getStatsReporter() {
+        return statsReporter;
     }
 }
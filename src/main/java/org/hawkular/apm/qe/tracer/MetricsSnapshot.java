@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tracer;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * Client side metrics at a point in time: counters, timer counts and totals (as '.count' and '.total' counters)
+ * and the last value of each gauge. Two snapshots give the activity in between, see {@link #delta(MetricsSnapshot)}.
+ *
+ * @author kearls
+ */
+@Data
+@AllArgsConstructor
+@ToString
+public class MetricsSnapshot {
+    //Milliseconds
+    private long timestamp;
+    private Map<String, Long> counters;
+    private Map<String, Long> gauges;
+
+    public static MetricsSnapshot empty() {
+        return new MetricsSnapshot(System.currentTimeMillis(), Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    public long getCounter(String name) {
+        return counters.getOrDefault(name, 0L);
+    }
+
+    public long getGauge(String name) {
+        return gauges.getOrDefault(name, 0L);
+    }
+
+    public long getSpansStarted() {
+        return getCounter(ConcurrentStatsReporter.SPANS_STARTED);
+    }
+
+    public long getSpansFinished() {
+        return getCounter(ConcurrentStatsReporter.SPANS_FINISHED);
+    }
+
+    public long getSpansReported() {
+        return getCounter(ConcurrentStatsReporter.REPORTER_SUCCESS);
+    }
+
+    public long getSpansFailed() {
+        return getCounter(ConcurrentStatsReporter.REPORTER_FAILURE);
+    }
+
+    public long getSpansDropped() {
+        return getCounter(ConcurrentStatsReporter.REPORTER_DROPPED);
+    }
+
+    public long getQueueLength() {
+        return getGauge(ConcurrentStatsReporter.REPORTER_QUEUE);
+    }
+
+    public long getFlushes() {
+        return getCounter(ConcurrentStatsReporter.FLUSH + ".count");
+    }
+
+    //Microseconds spent in flushes
+    public long getFlushTime() {
+        return getCounter(ConcurrentStatsReporter.FLUSH + ".total");
+    }
+
+    public long getSpansDrained() {
+        return getCounter(ConcurrentStatsReporter.FLUSH_SPANS);
+    }
+
+    public long getFlushTimeouts() {
+        return getCounter(ConcurrentStatsReporter.FLUSH_TIMEOUTS);
+    }
+
+    //Spans a sharded sender sent to the endpoint, host:port
+    public long getEndpointSpansSent(String endpoint) {
+        return getCounter(ShardedSender.metricName(endpoint, true));
+    }
+
+    public long getEndpointSpansDropped(String endpoint) {
+        return getCounter(ShardedSender.metricName(endpoint, false));
+    }
+
+    //Spans the client gave up on, dropped on a full queue or failed to send
+    public long getSpansLost() {
+        return getSpansDropped() + getSpansFailed();
+    }
+
+    /**
+     * Counters increased since the earlier snapshot, zeros left out, and the gauges of this snapshot. Counters
+     * are shared by all the threads using the tracer, so a delta includes whatever ran in parallel.
+     */
+    public MetricsSnapshot delta(MetricsSnapshot earlier) {
+        Map<String, Long> deltas = new TreeMap<String, Long>();
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            long delta = counter.getValue() - earlier.getCounter(counter.getKey());
+            if (delta != 0) {
+                deltas.put(counter.getKey(), delta);
+            }
+        }
+        return new MetricsSnapshot(timestamp, deltas, gauges);
+    }
+}
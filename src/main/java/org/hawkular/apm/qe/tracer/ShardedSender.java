@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tracer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.hawkular.apm.qe.model.Hashes;
+
+import com.twitter.zipkin.thriftjava.Span;
+import com.uber.jaeger.exceptions.SenderException;
+import com.uber.jaeger.metrics.Metrics;
+import com.uber.jaeger.metrics.StatsFactoryImpl;
+import com.uber.jaeger.metrics.StatsReporter;
+import com.uber.jaeger.senders.Sender;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Spreads spans over several endpoints, each with a sender of its own, keeping all the spans of a trace on one
+ * endpoint. Endpoints are placed on a consistent hash ring, {@link #VIRTUAL_NODES} points each, and a span goes to
+ * the owner of the first point at or after the hash of its trace id. The same endpoints give the same placement in
+ * every process, and adding or removing an endpoint only moves the traces of its own share.
+ *
+ * Spans sent and dropped are counted per endpoint, see {@link MetricsSnapshot#getEndpointSpansSent(String)}, to
+ * show imbalance between the endpoints. Used by the reporter thread only, like the senders it wraps.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class ShardedSender implements Sender {
+    //Points per endpoint on the ring, keeps the shares of a few endpoints within some percents of even
+    public static final int VIRTUAL_NODES = 160;
+    private static final String SENT = "sent";
+    private static final String DROPPED = "dropped";
+
+    private final List<String> endpoints;
+    private final Sender[] senders;
+    private final StatsReporter statsReporter;
+    //Same counters as the reporter's, for the spans sent by a flush which also failed
+    private final Metrics metrics;
+    //Ring points in ascending order, and the endpoint index of each
+    private final long[] points;
+    private final int[] owners;
+    private final long[] sent;
+    private final long[] dropped;
+    private final List<Map<String, String>> sentTags;
+    private final List<Map<String, String>> droppedTags;
+
+    /**
+     * @param endpoints names of the endpoints, host:port, in the order of their senders
+     */
+    public ShardedSender(List<String> endpoints, List<? extends Sender> senders, StatsReporter statsReporter) {
+        if (endpoints.isEmpty() || endpoints.size() != senders.size()) {
+            throw new IllegalArgumentException("One sender per endpoint expected, endpoints: " + endpoints
+                    + ", senders: " + senders.size());
+        }
+        this.endpoints = endpoints;
+        this.senders = senders.toArray(new Sender[senders.size()]);
+        this.statsReporter = statsReporter;
+        this.metrics = new Metrics(new StatsFactoryImpl(statsReporter));
+        TreeMap<Long, Integer> ring = new TreeMap<Long, Integer>();
+        for (int endpoint = 0; endpoint < endpoints.size(); endpoint++) {
+            for (int node = 0; node < VIRTUAL_NODES; node++) {
+                ring.putIfAbsent(hash(endpoints.get(endpoint) + "#" + node), endpoint);
+            }
+        }
+        points = new long[ring.size()];
+        owners = new int[ring.size()];
+        int index = 0;
+        for (Map.Entry<Long, Integer> point : ring.entrySet()) {
+            points[index] = point.getKey();
+            owners[index++] = point.getValue();
+        }
+        sent = new long[endpoints.size()];
+        dropped = new long[endpoints.size()];
+        sentTags = new ArrayList<Map<String, String>>(endpoints.size());
+        droppedTags = new ArrayList<Map<String, String>>(endpoints.size());
+        for (String endpoint : endpoints) {
+            sentTags.add(tags(endpoint, SENT));
+            droppedTags.add(tags(endpoint, DROPPED));
+        }
+    }
+
+    private static Map<String, String> tags(String endpoint, String state) {
+        Map<String, String> tags = new HashMap<String, String>();
+        tags.put("endpoint", endpoint);
+        tags.put("state", state);
+        return tags;
+    }
+
+    static String metricName(String endpoint, boolean sent) {
+        return Metrics.addTagsToMetricName(ConcurrentStatsReporter.ENDPOINT_SPANS, tags(endpoint, sent ? SENT
+                : DROPPED));
+    }
+
+    //FNV-1a, then mixed
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte next : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= next & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return Hashes.mix(hash);
+    }
+
+    //Index of the endpoint of the trace
+    public int shard(long traceId) {
+        //Spreads trace ids which are not random over the ring
+        long hash = Hashes.mix(traceId);
+        int low = 0;
+        int high = points.length;
+        //First point at or after the hash, wrapping around to the first point
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (points[middle] < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return owners[low == points.length ? 0 : low];
+    }
+
+    public List<String> getEndpoints() {
+        return endpoints;
+    }
+
+    @Override
+    public int append(Span span) throws SenderException {
+        int endpoint = shard(span.getTrace_id());
+        try {
+            return sent(endpoint, senders[endpoint].append(span));
+        } catch (SenderException ex) {
+            dropped(endpoint, ex.getDroppedSpanCount());
+            throw ex;
+        }
+    }
+
+    @Override
+    public int flush() throws SenderException {
+        return flush(false);
+    }
+
+    @Override
+    public int close() throws SenderException {
+        try {
+            return flush(true);
+        } finally {
+            _logger.info("Spans per endpoint, sent: {}, dropped: {}", perEndpoint(sent), perEndpoint(dropped));
+        }
+    }
+
+    /**
+     * Flushes or closes all the senders, even after one failed. When one fails the exception has the spans dropped
+     * by all of them, and the spans the others sent, which the reporter only counts from the return value, are
+     * counted as sent here.
+     */
+    private int flush(boolean close) throws SenderException {
+        int flushed = 0;
+        int failed = 0;
+        SenderException failure = null;
+        for (int endpoint = 0; endpoint < senders.length; endpoint++) {
+            try {
+                flushed += sent(endpoint, close ? senders[endpoint].close() : senders[endpoint].flush());
+            } catch (SenderException ex) {
+                dropped(endpoint, ex.getDroppedSpanCount());
+                failed += ex.getDroppedSpanCount();
+                failure = failure == null ? ex : failure;
+            }
+        }
+        if (failure != null) {
+            metrics.reporterSuccess.inc(flushed);
+            throw new SenderException("Failed to send to some of " + endpoints, failure, failed);
+        }
+        return flushed;
+    }
+
+    private int sent(int endpoint, int count) {
+        if (count > 0) {
+            sent[endpoint] += count;
+            statsReporter.incCounter(ConcurrentStatsReporter.ENDPOINT_SPANS, count, sentTags.get(endpoint));
+        }
+        return count;
+    }
+
+    private void dropped(int endpoint, int count) {
+        if (count > 0) {
+            dropped[endpoint] += count;
+            statsReporter.incCounter(ConcurrentStatsReporter.ENDPOINT_SPANS, count, droppedTags.get(endpoint));
+        }
+    }
+
+    private Map<String, Long> perEndpoint(long[] counts) {
+        Map<String, Long> byEndpoint = new TreeMap<String, Long>();
+        for (int endpoint = 0; endpoint < counts.length; endpoint++) {
+            byEndpoint.put(endpoints.get(endpoint), counts[endpoint]);
+        }
+        return byEndpoint;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedSender(endpoints=" + endpoints + ")";
+    }
+}
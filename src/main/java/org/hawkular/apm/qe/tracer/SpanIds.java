@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tracer;
+
+import io.opentracing.SpanContext;
+
+/**
+ * Span ids of the span contexts of the supported tracers, as hex strings, the way the servers report them, and
+ * their sampling decision. Keeps the tracer types out of the model: a new tracer adds its context here.
+ *
+ * @author kearls
+ */
+public final class SpanIds {
+
+    private SpanIds() {
+
+    }
+
+    //Null for a tracer without span ids
+    public static String spanId(SpanContext context) {
+        if (context instanceof com.uber.jaeger.SpanContext) {
+            return Long.toHexString(((com.uber.jaeger.SpanContext) context).getSpanID());
+        }
+        if (context instanceof BraveSpanContext) {
+            return Long.toHexString(((BraveSpanContext) context).unwrap().spanId());
+        }
+        return null;
+    }
+
+    //Whether the span is reported to the server, true for a tracer without a sampling decision
+    public static boolean sampled(SpanContext context) {
+        if (context instanceof com.uber.jaeger.SpanContext) {
+            return ((com.uber.jaeger.SpanContext) context).isSampled();
+        }
+        if (context instanceof BraveSpanContext) {
+            return !Boolean.FALSE.equals(((BraveSpanContext) context).unwrap().sampled());
+        }
+        return true;
+    }
+}
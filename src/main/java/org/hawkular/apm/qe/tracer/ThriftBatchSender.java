@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tracer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+
+import com.twitter.zipkin.thriftjava.Span;
+import com.uber.jaeger.exceptions.SenderException;
+import com.uber.jaeger.senders.Sender;
+
+/**
+ * Buffers spans serialized with the transport's Thrift protocol and sends them as a batch when the next span would
+ * not fit in {@link #getMaxBatchSize()} bytes, or when the reporter flushes. Spans are serialized once, on append,
+ * so a batch is written by copying bytes.
+ *
+ * @author kearls
+ */
+public abstract class ThriftBatchSender implements Sender {
+    private final ByteArrayOutputStream spanBuffer = new ByteArrayOutputStream();
+    private final TProtocol spanProtocol = createProtocol(new TIOStreamTransport(spanBuffer));
+    private final List<byte[]> batch = new ArrayList<byte[]>();
+    private int batchSize = 0;
+
+    protected abstract TProtocol createProtocol(TIOStreamTransport transport);
+
+    //Upper bound of a batch in bytes, span list framing included
+    protected abstract int getMaxBatchSize();
+
+    //Bytes the transport adds around the serialized spans
+    protected abstract int getBatchOverhead();
+
+    protected abstract void send(List<byte[]> spans, int size) throws Exception;
+
+    protected abstract void closeTransport() throws Exception;
+
+    @Override
+    public int append(Span span) throws SenderException {
+        byte[] serialized;
+        try {
+            spanBuffer.reset();
+            span.write(spanProtocol);
+            serialized = spanBuffer.toByteArray();
+        } catch (TException ex) {
+            throw new SenderException("Failed to serialize span", ex, 1);
+        }
+        int maxSpansSize = getMaxBatchSize() - getBatchOverhead();
+        if (serialized.length > maxSpansSize) {
+            throw new SenderException(String.format("Span too large to send, size: %d, max: %d",
+                    serialized.length, maxSpansSize), null, 1);
+        }
+        int flushed = 0;
+        if (batchSize + serialized.length > maxSpansSize) {
+            try {
+                flushed = flush();
+            } catch (SenderException ex) {
+                //The span appended is dropped with the batch, as Jaeger's ThriftSender does
+                throw new SenderException(ex.getMessage(), ex.getCause(), ex.getDroppedSpanCount() + 1);
+            }
+        }
+        batch.add(serialized);
+        batchSize += serialized.length;
+        return flushed;
+    }
+
+    @Override
+    public int flush() throws SenderException {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int count = batch.size();
+        try {
+            send(batch, batchSize);
+        } catch (Exception ex) {
+            throw new SenderException("Failed to send " + count + " spans", ex, count);
+        } finally {
+            batch.clear();
+            batchSize = 0;
+        }
+        return count;
+    }
+
+    @Override
+    public int close() throws SenderException {
+        try {
+            return flush();
+        } finally {
+            try {
+                closeTransport();
+            } catch (Exception ex) {
+                throw new SenderException("Failed to close transport", ex, 0);
+            }
+        }
+    }
+}
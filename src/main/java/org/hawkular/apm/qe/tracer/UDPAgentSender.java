@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tracer;
+
+import java.io.ByteArrayOutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.List;
+
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TIOStreamTransport;
+
+import com.uber.jaeger.reporters.protocols.TUDPTransport;
+
+/**
+ * Sends spans to the Jaeger agent the way {@link com.uber.jaeger.senders.UDPSender} does, one compact Thrift
+ * emitZipkinBatch call per datagram, on a socket whose send buffer size can be set.
+ *
+ * @author kearls
+ */
+public class UDPAgentSender extends ThriftBatchSender {
+    //Message, argument struct and list headers, generous
+    private static final int BATCH_OVERHEAD = 64;
+
+    private final DatagramSocket socket;
+    private final InetSocketAddress agent;
+    private final int maxPacketSize;
+    private final ByteArrayOutputStream packetBuffer = new ByteArrayOutputStream(TUDPTransport.MAX_PACKET_SIZE);
+    private final TProtocol packetProtocol = createProtocol(new TIOStreamTransport(packetBuffer));
+    private int sequence = 0;
+
+    /**
+     * @param packetSize max datagram size, 0 or anything above it for the largest the agent reads
+     * @param sendBufferSize socket send buffer size, 0 to keep the OS default
+     */
+    public UDPAgentSender(String host, int port, int packetSize, int sendBufferSize) throws SocketException {
+        this.agent = new InetSocketAddress(host, port);
+        this.maxPacketSize = packetSize == 0 ? TUDPTransport.MAX_PACKET_SIZE
+                : Math.min(packetSize, TUDPTransport.MAX_PACKET_SIZE);
+        this.socket = new DatagramSocket();
+        if (sendBufferSize > 0) {
+            socket.setSendBufferSize(sendBufferSize);
+        }
+    }
+
+    @Override
+    protected TProtocol createProtocol(TIOStreamTransport transport) {
+        return new TCompactProtocol(transport);
+    }
+
+    @Override
+    protected int getMaxBatchSize() {
+        return maxPacketSize;
+    }
+
+    @Override
+    protected int getBatchOverhead() {
+        return BATCH_OVERHEAD;
+    }
+
+    @Override
+    protected void send(List<byte[]> spans, int size) throws Exception {
+        packetBuffer.reset();
+        packetProtocol.writeMessageBegin(new TMessage("emitZipkinBatch", TMessageType.ONEWAY, ++sequence));
+        packetProtocol.writeStructBegin(new TStruct("emitZipkinBatch_args"));
+        packetProtocol.writeFieldBegin(new TField("spans", TType.LIST, (short) 1));
+        packetProtocol.writeListBegin(new TList(TType.STRUCT, spans.size()));
+        for (byte[] span : spans) {
+            packetBuffer.write(span);
+        }
+        packetProtocol.writeListEnd();
+        packetProtocol.writeFieldEnd();
+        packetProtocol.writeFieldStop();
+        packetProtocol.writeStructEnd();
+        packetProtocol.writeMessageEnd();
+        socket.send(new DatagramPacket(packetBuffer.toByteArray(), packetBuffer.size(), agent));
+    }
+
+    @Override
+    protected void closeTransport() {
+        socket.close();
+    }
+
+    @Override
+    public String toString() {
+        return "UDPAgentSender(agent=" + agent + ", maxPacketSize=" + maxPacketSize + ")";
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tracer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.apm.qe.JaegerQEBase;
+import org.hawkular.apm.qe.model.conf.JaegerAgentConf;
+
+import brave.Tracing;
+import brave.sampler.Sampler;
+import io.opentracing.Tracer;
+import lombok.extern.slf4j.Slf4j;
+import zipkin.reporter.AsyncReporter;
+import zipkin.reporter.Encoding;
+import zipkin.reporter.Reporter;
+import zipkin.reporter.urlconnection.URLConnectionSender;
+
+/**
+ * Zipkin OpenTracing instrumentation, a {@link BraveTracer} posting spans as a binary Thrift list to the zipkin
+ * compatible endpoint of the collector, the same endpoint and encoding as the HTTP sender of
+ * {@link JaegerOpenTracing}. Uses the agent configuration where zipkin has an equivalent: collector url, queue
+ * size, flush interval, packet size and sampling rate. Brave only samples by rate, the other sampler types are
+ * not available.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class ZipkinOpenTracing implements ITracer {
+
+    private static ZipkinOpenTracing _INSTANCE = new ZipkinOpenTracing();
+    private volatile Tracer tracer = null;
+    private volatile AsyncReporter<zipkin.Span> reporter = null;
+    private final ConcurrentStatsReporter statsReporter = new ConcurrentStatsReporter();
+
+    private ZipkinOpenTracing() {
+
+    }
+
+    public static ZipkinOpenTracing getInstance() {
+        return _INSTANCE;
+    }
+
+    @Override
+    public Tracer getTracer() {
+        if (tracer == null) {
+            createTracer();
+        }
+        return tracer;
+    }
+
+    private synchronized void createTracer() {
+        if (tracer == null) {
+            JaegerAgentConf agent = JaegerQEBase.getJaegerConf().getAgent();
+            reporter = createReporter(agent, statsReporter);
+            tracer = createTracer(agent, JaegerQEBase.getJaegerConf().getServiceName(), reporter);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> close(agent.getFlushTimeout()),
+                    "zipkin-qe-shutdown"));
+        }
+    }
+
+    public static BraveTracer createTracer(JaegerAgentConf agent, String serviceName,
+            Reporter<zipkin.Span> reporter) {
+        if (agent.getSampler() != JaegerAgentConf.SAMPLER_TYPE.PROBABILISTIC) {
+            _logger.warn("{} sampler not available with zipkin, sampling with rate {}", agent.getSampler(),
+                    agent.getSamplingRate());
+        }
+        return new BraveTracer(Tracing.newBuilder()
+                .localServiceName(serviceName)
+                .reporter(reporter)
+                .sampler(Sampler.create(agent.getSamplingRate().floatValue()))
+                .build());
+    }
+
+    /**
+     * Reporter of a tracer of its own. Flush then close it to send the spans still queued, closing alone drops
+     * them, see {@link #flush(AsyncReporter, ConcurrentStatsReporter, long)}.
+     */
+    public static AsyncReporter<zipkin.Span> createReporter(JaegerAgentConf agent,
+            ConcurrentStatsReporter statsReporter) {
+        _logger.info("creating zipkin reporter with {}", agent);
+        URLConnectionSender.Builder sender = URLConnectionSender.builder()
+                .endpoint(agent.getCollectorUrl())
+                .encoding(Encoding.THRIFT)
+                //The collector reads plain bodies
+                .compressionEnabled(false);
+        if (agent.getPacketSize() != null && agent.getPacketSize() > 0) {
+            sender.messageMaxBytes(agent.getPacketSize());
+        }
+        ZipkinReporterMetrics metrics = new ZipkinReporterMetrics(statsReporter);
+        return AsyncReporter.builder(metrics.counting(sender.build()))
+                .metrics(metrics)
+                .queuedMaxSpans(agent.getQueueSize())
+                .messageTimeout(agent.getFlushInterval(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Override
+    public FlushResult flush(long timeout) {
+        AsyncReporter<zipkin.Span> current = reporter;
+        return current == null ? FlushResult.empty() : flush(current, statsReporter, timeout);
+    }
+
+    @Override
+    public synchronized FlushResult close(long timeout) {
+        AsyncReporter<zipkin.Span> current = reporter;
+        if (current == null) {
+            return FlushResult.empty();
+        }
+        reporter = null;
+        FlushResult result = flush(current, statsReporter, timeout);
+        current.close();
+        ((BraveTracer) tracer).unwrap().close();
+        return result;
+    }
+
+    /**
+     * Flushes a reporter made by {@link #createReporter(JaegerAgentConf, ConcurrentStatsReporter)}, waiting for
+     * the timeout in milliseconds at most. AsyncReporter flushes without a timeout, on the calling thread, so the
+     * flush runs on a thread of its own which is left running once the timeout expires. Spans sent meanwhile by the
+     * reporter's own thread count as drained.
+     */
+    public static FlushResult flush(AsyncReporter<zipkin.Span> reporter, ConcurrentStatsReporter statsReporter,
+            long timeout) {
+        long start = System.nanoTime();
+        long before = statsReporter.getCounter(ConcurrentStatsReporter.REPORTER_SUCCESS);
+        Thread flusher = new Thread(reporter::flush, "zipkin-qe-flush");
+        flusher.setDaemon(true);
+        flusher.start();
+        try {
+            //0 would wait forever
+            flusher.join(Math.max(1L, timeout));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        FlushResult result = FlushResult.builder()
+                .drained(statsReporter.getCounter(ConcurrentStatsReporter.REPORTER_SUCCESS) - before)
+                .elapsed(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start))
+                .complete(!flusher.isAlive())
+                .build();
+        statsReporter.recordFlush(result);
+        return result;
+    }
+
+    @Override
+    public MetricsSnapshot getMetrics() {
+        return statsReporter.snapshot();
+    }
+
+    public ConcurrentStatsReporter getStatsReporter() {
+        return statsReporter;
+    }
+}
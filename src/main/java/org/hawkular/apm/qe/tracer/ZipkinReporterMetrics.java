@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tracer;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import zipkin.Component;
+import zipkin.reporter.Callback;
+import zipkin.reporter.Encoding;
+import zipkin.reporter.ReporterMetrics;
+import zipkin.reporter.Sender;
+
+/**
+ * Feeds the metrics of a zipkin AsyncReporter to a {@link ConcurrentStatsReporter}, under the names Jaeger uses
+ * where there is one, so a {@link MetricsSnapshot} reads the same for both instrumentations. Zipkin counts a
+ * batch which failed to send as dropped spans: failures show up in {@link MetricsSnapshot#getSpansDropped()}
+ * and {@link MetricsSnapshot#getSpansFailed()} stays at 0.
+ *
+ * @author kearls
+ */
+public class ZipkinReporterMetrics implements ReporterMetrics {
+    //Messages handed to the sender, sent or not
+    public static final String MESSAGES = "zipkin.reporter-messages";
+    public static final String MESSAGES_DROPPED = "zipkin.reporter-messages.state=dropped";
+    public static final String MESSAGE_BYTES = "zipkin.reporter-message-bytes";
+    public static final String SPAN_BYTES = "zipkin.reporter-span-bytes";
+    public static final String QUEUED_BYTES = "zipkin.reporter-queue-bytes";
+
+    private static final Map<String, String> NO_TAGS = Collections.emptyMap();
+
+    private final ConcurrentStatsReporter statsReporter;
+
+    public ZipkinReporterMetrics(ConcurrentStatsReporter statsReporter) {
+        this.statsReporter = statsReporter;
+    }
+
+    @Override
+    public void incrementMessages() {
+        statsReporter.incCounter(MESSAGES, 1, NO_TAGS);
+    }
+
+    @Override
+    public void incrementMessagesDropped(Throwable cause) {
+        statsReporter.incCounter(MESSAGES_DROPPED, 1, NO_TAGS);
+    }
+
+    //Spans handed to the reporter, that is finished and sampled
+    @Override
+    public void incrementSpans(int quantity) {
+        statsReporter.incCounter(ConcurrentStatsReporter.SPANS_FINISHED, quantity, NO_TAGS);
+    }
+
+    @Override
+    public void incrementSpanBytes(int quantity) {
+        statsReporter.incCounter(SPAN_BYTES, quantity, NO_TAGS);
+    }
+
+    @Override
+    public void incrementMessageBytes(int quantity) {
+        statsReporter.incCounter(MESSAGE_BYTES, quantity, NO_TAGS);
+    }
+
+    @Override
+    public void incrementSpansDropped(int quantity) {
+        statsReporter.incCounter(ConcurrentStatsReporter.REPORTER_DROPPED, quantity, NO_TAGS);
+    }
+
+    @Override
+    public void updateQueuedSpans(int update) {
+        statsReporter.updateGauge(ConcurrentStatsReporter.REPORTER_QUEUE, update, NO_TAGS);
+    }
+
+    @Override
+    public void updateQueuedBytes(int update) {
+        statsReporter.updateGauge(QUEUED_BYTES, update, NO_TAGS);
+    }
+
+    /**
+     * The reporter metrics have no count of the spans sent, wraps the sender to count them as Jaeger does.
+     */
+    public Sender counting(Sender sender) {
+        return new CountingSender(sender);
+    }
+
+    private class CountingSender implements Sender {
+        private final Sender delegate;
+
+        private CountingSender(Sender delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Encoding encoding() {
+            return delegate.encoding();
+        }
+
+        @Override
+        public int messageMaxBytes() {
+            return delegate.messageMaxBytes();
+        }
+
+        @Override
+        public int messageSizeInBytes(List<byte[]> encodedSpans) {
+            return delegate.messageSizeInBytes(encodedSpans);
+        }
+
+        @Override
+        public void sendSpans(List<byte[]> encodedSpans, Callback callback) {
+            int count = encodedSpans.size();
+            delegate.sendSpans(encodedSpans, new Callback() {
+                @Override
+                public void onComplete() {
+                    statsReporter.incCounter(ConcurrentStatsReporter.REPORTER_SUCCESS, count, NO_TAGS);
+                    callback.onComplete();
+                }
+
+                @Override
+                public void onError(Throwable cause) {
+                    callback.onError(cause);
+                }
+            });
+        }
+
+        @Override
+        public Component.CheckResult check() {
+            return delegate.check();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.hawkular.apm.qe.JaegerQEBase;
+import org.hawkular.apm.qe.load.SpanColumnWriter;
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.SpanMatcher;
+
+import com.uber.jaeger.rest.model.Criteria;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Criteria handling and waiting methods shared by the {@link IServer} implementations.
+ *
+ * @author kearls
+ */
+@Slf4j
+public abstract class AbstractServer implements IServer {
+    //Poll delays of the waiting methods, doubled after each unsuccessful poll
+    private static final long INITIAL_POLL_DELAY = 10L;
+    private static final long MAX_POLL_DELAY = 1000L;
+
+    protected Criteria getCriteria(String operation, Long startTime, Long endTime) {
+        return Criteria.builder()
+                .service(JaegerQEBase.getJaegerConf().getServiceName())
+                .operation(operation)
+                .start(startTime)
+                .end(endTime)
+                .build();
+    }
+
+    private void updateCriteria(Criteria criteria) {
+        if (criteria.getService() == null) {
+            criteria.setService(JaegerQEBase.getJaegerConf().getServiceName());
+        }
+        if (criteria.getStart() != null) {
+            criteria.setStart(criteria.getStart() * 1000L);
+        }
+        if (criteria.getEnd() != null) {
+            criteria.setEnd(criteria.getEnd() * 1000L);
+        }
+    }
+
+    /**
+     * Runs a query with start and end converted to microseconds, and hands the criteria back unchanged so it can
+     * be used for the next query.
+     */
+    protected <T> T query(Criteria criteria, Function<Criteria, T> action) {
+        String service = criteria.getService();
+        Long start = criteria.getStart();
+        Long end = criteria.getEnd();
+        updateCriteria(criteria);
+        try {
+            return action.apply(criteria);
+        } finally {
+            criteria.setService(service);
+            criteria.setStart(start);
+            criteria.setEnd(end);
+        }
+    }
+
+    protected <T> T waitFor(Criteria criteria, Function<Criteria, T> query, Predicate<T> condition) {
+        long deadline = System.currentTimeMillis() + JaegerQEBase.getJaegerConf().getServer().getQueryTimeout();
+        long delay = INITIAL_POLL_DELAY;
+        while (true) {
+            T result = query.apply(criteria);
+            long remaining = deadline - System.currentTimeMillis();
+            if (condition.test(result)) {
+                return result;
+            } else if (remaining <= 0) {
+                _logger.warn("Expected data not visible on time, {}, Result: {}", criteria, result);
+                return result;
+            }
+            try {
+                Thread.sleep(Math.min(delay, remaining));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return result;
+            }
+            delay = Math.min(delay * 2, MAX_POLL_DELAY);
+        }
+    }
+
+    @Override
+    public List<QESpan> listSpan(String operation, Long startTime, Long endTime) {
+        return listSpan(getCriteria(operation, startTime, endTime));
+    }
+
+    @Override
+    public long exportSpans(Criteria criteria, Path file) {
+        try {
+            SpanColumnWriter writer = new SpanColumnWriter(file);
+            boolean complete = false;
+            try {
+                long count = streamSpans(criteria, writer::add);
+                //Writes the footer
+                writer.close();
+                complete = true;
+                return count;
+            } finally {
+                if (!complete) {
+                    writer.abort();
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to export spans to " + file + ", " + criteria, ex);
+        }
+    }
+
+    @Override
+    public int waitForTraceCount(Criteria criteria, int expectedCount) {
+        return waitFor(criteria, this::traceCount, count -> count >= expectedCount);
+    }
+
+    @Override
+    public List<QESpan> waitForSpans(Criteria criteria, int expectedCount) {
+        return waitFor(criteria, this::listSpan, spans -> spans.size() >= expectedCount);
+    }
+
+    @Override
+    public List<QESpan> waitForSpans(Criteria criteria, Collection<QESpan> spansExpected) {
+        return waitFor(criteria, this::listSpan, spans -> SpanMatcher.containsAll(spans, spansExpected));
+    }
+}
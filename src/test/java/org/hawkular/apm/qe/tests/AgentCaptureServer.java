@@ -0,0 +1,352 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.QESpanBuilder;
+
+import com.twitter.zipkin.thriftjava.Annotation;
+import com.twitter.zipkin.thriftjava.BinaryAnnotation;
+import com.twitter.zipkin.thriftjava.Span;
+import com.uber.jaeger.agent.thrift.Agent;
+import com.uber.jaeger.reporters.protocols.TUDPTransport;
+import com.uber.jaeger.rest.model.Criteria;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stands in for the Jaeger agent: binds the agent UDP port, decodes the Thrift batches UDPSender emits and keeps
+ * the spans in memory, indexed by operation, start time and trace id. Verifies exactly what the client put on the
+ * wire, with no collector, storage or query service involved.
+ *
+ * Criteria are applied the way the query service does: spans matching the service, operation and time range select
+ * their traces, and all the spans of the selected traces are returned.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class AgentCaptureServer extends AbstractServer implements AutoCloseable {
+    private static final int RECEIVE_BUFFER_SIZE = 8 * 1024 * 1024;
+    //Local component annotation, carries the service name
+    private static final String LOCAL_COMPONENT = "lc";
+
+    private final DatagramSocket socket;
+    private final Thread receiver;
+    private final Map<Long, Queue<Span>> spansByTrace = new ConcurrentHashMap<Long, Queue<Span>>();
+    private final Map<String, Queue<Span>> spansByOperation = new ConcurrentHashMap<String, Queue<Span>>();
+    private final ConcurrentNavigableMap<Long, Queue<Span>> spansByStart = new ConcurrentSkipListMap<Long,
+            Queue<Span>>();
+    private final Map<String, Set<String>> operationsByService = new ConcurrentHashMap<String, Set<String>>();
+    private final AtomicLong packets = new AtomicLong();
+    private final AtomicLong spans = new AtomicLong();
+    private final AtomicLong decodingErrors = new AtomicLong();
+
+    public AgentCaptureServer(int port) throws SocketException {
+        socket = new DatagramSocket(null);
+        socket.setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+        socket.bind(new InetSocketAddress(port));
+        receiver = new Thread(this::receive, "agent-capture-" + port);
+        receiver.setDaemon(true);
+        receiver.start();
+        _logger.info("Capturing agent traffic on UDP port {}", port);
+    }
+
+    private void receive() {
+        byte[] buffer = new byte[TUDPTransport.MAX_PACKET_SIZE];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                socket.receive(packet);
+                packets.incrementAndGet();
+                //Decoded binary values share the array, each packet needs its own
+                decode(Arrays.copyOf(buffer, packet.getLength()), packet.getLength());
+            } catch (TException ex) {
+                decodingErrors.incrementAndGet();
+                _logger.error("Failed to decode packet,", ex);
+            } catch (IOException ex) {
+                if (!socket.isClosed()) {
+                    _logger.error("Exception,", ex);
+                }
+            }
+        }
+    }
+
+    void decode(byte[] data, int length) throws TException {
+        TProtocol protocol = new TCompactProtocol(new TMemoryInputTransport(data, 0, length));
+        TMessage message = protocol.readMessageBegin();
+        if (!message.name.equals("emitZipkinBatch")) {
+            _logger.warn("Ignoring unknown agent message {}", message);
+            TProtocolUtil.skip(protocol, TType.STRUCT);
+            return;
+        }
+        Agent.emitZipkinBatch_args batch = new Agent.emitZipkinBatch_args();
+        batch.read(protocol);
+        protocol.readMessageEnd();
+        for (Span span : batch.getSpans()) {
+            index(span);
+        }
+    }
+
+    private void index(Span span) {
+        spansByTrace.computeIfAbsent(span.getTrace_id(), key -> new ConcurrentLinkedQueue<Span>()).add(span);
+        spansByOperation.computeIfAbsent(span.getName(), key -> new ConcurrentLinkedQueue<Span>()).add(span);
+        spansByStart.computeIfAbsent(span.getTimestamp(), key -> new ConcurrentLinkedQueue<Span>()).add(span);
+        String service = getService(span);
+        if (service != null) {
+            operationsByService.computeIfAbsent(service, key -> ConcurrentHashMap.newKeySet()).add(span.getName());
+        }
+        spans.incrementAndGet();
+    }
+
+    private String getService(Span span) {
+        if (span.getBinary_annotations() != null) {
+            for (BinaryAnnotation annotation : span.getBinary_annotations()) {
+                if (annotation.getHost() != null) {
+                    return annotation.getHost().getService_name();
+                }
+            }
+        }
+        if (span.getAnnotations() != null) {
+            for (Annotation annotation : span.getAnnotations()) {
+                if (annotation.getHost() != null) {
+                    return annotation.getHost().getService_name();
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(Span span, Criteria criteria) {
+        if (criteria.getOperation() != null && !criteria.getOperation().equals(span.getName())) {
+            return false;
+        }
+        if (criteria.getStart() != null && span.getTimestamp() < criteria.getStart()) {
+            return false;
+        }
+        if (criteria.getEnd() != null && span.getTimestamp() > criteria.getEnd()) {
+            return false;
+        }
+        return criteria.getService() == null || criteria.getService().equals(getService(span));
+    }
+
+    //Trace ids selected by the criteria, start and end in microseconds
+    private Set<Long> findTraces(Criteria criteria) {
+        Collection<Queue<Span>> candidates;
+        if (criteria.getOperation() != null) {
+            Queue<Span> operationSpans = spansByOperation.get(criteria.getOperation());
+            candidates = new ArrayList<Queue<Span>>();
+            if (operationSpans != null) {
+                candidates.add(operationSpans);
+            }
+        } else {
+            candidates = spansByStart.subMap(criteria.getStart() == null ? Long.MIN_VALUE : criteria.getStart(),
+                    true, criteria.getEnd() == null ? Long.MAX_VALUE : criteria.getEnd(), true).values();
+        }
+        Set<Long> traceIds = new LinkedHashSet<Long>();
+        for (Queue<Span> queue : candidates) {
+            for (Span span : queue) {
+                if (matches(span, criteria)) {
+                    traceIds.add(span.getTrace_id());
+                }
+            }
+        }
+        return traceIds;
+    }
+
+    private Object toTagValue(BinaryAnnotation annotation) {
+        ByteBuffer value = annotation.bufferForValue();
+        switch (annotation.getAnnotation_type()) {
+            case BOOL:
+                return value.get(value.position()) != 0;
+            case I16:
+                return value.getShort(value.position());
+            case I32:
+                return value.getInt(value.position());
+            case I64:
+                return value.getLong(value.position());
+            case DOUBLE:
+                return value.getDouble(value.position());
+            default:
+                return new String(annotation.getValue(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private QESpan toQESpan(Span span) {
+        QESpanBuilder qeSpanBuilder = QESpanBuilder.offlineBuilder(span.getName());
+        qeSpanBuilder.withStartTimestamp(span.getTimestamp());
+        QESpan qeSpan = qeSpanBuilder.build();
+        qeSpan.finish(span.getTimestamp() + span.getDuration());
+        qeSpan.setSpanId(Long.toHexString(span.getId()));
+        if (span.getBinary_annotations() != null) {
+            for (BinaryAnnotation annotation : span.getBinary_annotations()) {
+                if (annotation.getKey().equals(LOCAL_COMPONENT)) {
+                    continue;
+                }
+                Object value = toTagValue(annotation);
+                if (value instanceof Boolean) {
+                    qeSpan.setTag(annotation.getKey(), (Boolean) value);
+                } else if (value instanceof Number) {
+                    qeSpan.setTag(annotation.getKey(), (Number) value);
+                } else {
+                    qeSpan.setTag(annotation.getKey(), (String) value);
+                }
+            }
+        }
+        return qeSpan;
+    }
+
+    //Converts spans of a trace and links them to their parents
+    private void buildTrace(List<QESpan> qeSpans, Collection<Span> traceSpans) {
+        Map<Long, QESpan> spansById = new HashMap<Long, QESpan>(traceSpans.size() * 4 / 3 + 1);
+        for (Span span : traceSpans) {
+            QESpan qeSpan = toQESpan(span);
+            spansById.put(span.getId(), qeSpan);
+            qeSpans.add(qeSpan);
+        }
+        for (Span span : traceSpans) {
+            if (span.getParent_id() != 0) {
+                QESpan parent = spansById.get(span.getParent_id());
+                if (parent != null) {
+                    spansById.get(span.getId()).setParent(parent);
+                }
+            }
+        }
+    }
+
+    private List<QESpan> findSpans(Criteria criteria) {
+        List<QESpan> qeSpans = new ArrayList<QESpan>();
+        for (Long traceId : findTraces(criteria)) {
+            buildTrace(qeSpans, spansByTrace.get(traceId));
+        }
+        return qeSpans;
+    }
+
+    @Override
+    public QESpan getSpan(Criteria criteria) {
+        return query(criteria, queryCriteria -> {
+            for (QESpan qeSpan : findSpans(queryCriteria)) {
+                if (queryCriteria.getOperation() == null
+                        || queryCriteria.getOperation().equals(qeSpan.getOperation())) {
+                    return qeSpan;
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public List<QESpan> listSpan(Criteria criteria) {
+        return query(criteria, this::findSpans);
+    }
+
+    @Override
+    public int traceCount(Criteria criteria) {
+        return query(criteria, queryCriteria -> findTraces(queryCriteria).size());
+    }
+
+    @Override
+    public long streamSpans(Criteria criteria, Consumer<QESpan> consumer) {
+        return query(criteria, queryCriteria -> {
+            long count = 0;
+            for (Long traceId : findTraces(queryCriteria)) {
+                List<QESpan> qeSpans = new ArrayList<QESpan>();
+                buildTrace(qeSpans, spansByTrace.get(traceId));
+                qeSpans.forEach(consumer);
+                count += qeSpans.size();
+            }
+            return count;
+        });
+    }
+
+    //Always current, nothing cached
+    @Override
+    public List<String> listServices() {
+        return new ArrayList<String>(operationsByService.keySet());
+    }
+
+    @Override
+    public List<String> listOperations(String service) {
+        Set<String> operations = operationsByService.get(service);
+        return operations == null ? new ArrayList<String>() : new ArrayList<String>(operations);
+    }
+
+    @Override
+    public void invalidateMetadata() {
+    }
+
+    public long getPacketCount() {
+        return packets.get();
+    }
+
+    public long getSpanCount() {
+        return spans.get();
+    }
+
+    public long getDecodingErrorCount() {
+        return decodingErrors.get();
+    }
+
+    //Forgets all the captured spans
+    public void clear() {
+        spansByTrace.clear();
+        spansByOperation.clear();
+        spansByStart.clear();
+        operationsByService.clear();
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+        try {
+            receiver.join();
+        } catch (InterruptedException ex) {
+            //The receiver stops on its own with the socket closed
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.hawkular.apm.qe.JaegerQEBase;
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.SpanMatcher;
+
+import com.uber.jaeger.rest.model.Criteria;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs the queries of a blocking {@link IServer} on a pool of as many threads as the concurrency limit, so at most
+ * that many are in flight. Spans are listed through {@link IServer#streamSpans(Criteria, Consumer)}: with
+ * {@link JaegerRestApiWrapper} that is a plain HttpURLConnection per query, so each thread reuses a keep-alive
+ * connection, see 'http.maxConnections' in {@link JaegerQEBase}, where its listSpan goes through the shared REST
+ * client. Waiting methods poll on a timer with the same back off as
+ * {@link AbstractServer}, without holding a query thread while they wait.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class AsyncServer implements IAsyncServer {
+    private static final long INITIAL_POLL_DELAY = 10L;
+    private static final long MAX_POLL_DELAY = 1000L;
+
+    private final IServer server;
+    private final ExecutorService queries;
+    private final ScheduledExecutorService polls;
+
+    public AsyncServer(IServer server, int concurrency) {
+        this.server = server;
+        this.queries = Executors.newFixedThreadPool(concurrency, daemonThreads("async-query-"));
+        this.polls = Executors.newSingleThreadScheduledExecutor(daemonThreads("async-poll-"));
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    //Completes when all the futures have, with their results in order
+    public static <T> CompletableFuture<List<T>> all(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+                .thenApply(ignored -> {
+                    List<T> results = new ArrayList<T>(futures.size());
+                    for (CompletableFuture<T> future : futures) {
+                        results.add(future.join());
+                    }
+                    return results;
+                });
+    }
+
+    //AbstractServer converts criteria in place while it queries, each query gets its own copy
+    private static Criteria copy(Criteria criteria) {
+        return Criteria.builder()
+                .service(criteria.getService())
+                .operation(criteria.getOperation())
+                .start(criteria.getStart())
+                .end(criteria.getEnd())
+                .build();
+    }
+
+    private <T> CompletableFuture<T> submit(Criteria criteria, Function<Criteria, T> query) {
+        Criteria queryCriteria = copy(criteria);
+        return CompletableFuture.supplyAsync(() -> query.apply(queryCriteria), queries);
+    }
+
+    @Override
+    public CompletableFuture<List<QESpan>> listSpan(Criteria criteria) {
+        return submit(criteria, this::streamToList);
+    }
+
+    private List<QESpan> streamToList(Criteria criteria) {
+        List<QESpan> spans = new ArrayList<QESpan>();
+        server.streamSpans(criteria, spans::add);
+        return spans;
+    }
+
+    @Override
+    public CompletableFuture<Integer> traceCount(Criteria criteria) {
+        return submit(criteria, server::traceCount);
+    }
+
+    @Override
+    public CompletableFuture<Long> streamSpans(Criteria criteria, Consumer<QESpan> consumer) {
+        return submit(criteria, queryCriteria -> server.streamSpans(queryCriteria, consumer));
+    }
+
+    @Override
+    public CompletableFuture<Integer> waitForTraceCount(Criteria criteria, int expectedCount) {
+        return waitFor(criteria, server::traceCount, count -> count >= expectedCount);
+    }
+
+    @Override
+    public CompletableFuture<List<QESpan>> waitForSpans(Criteria criteria, int expectedCount) {
+        return waitFor(criteria, this::streamToList, spans -> spans.size() >= expectedCount);
+    }
+
+    @Override
+    public CompletableFuture<List<QESpan>> waitForSpans(Criteria criteria, Collection<QESpan> spansExpected) {
+        return waitFor(criteria, this::streamToList, spans -> SpanMatcher.containsAll(spans, spansExpected));
+    }
+
+    private <T> CompletableFuture<T> waitFor(Criteria criteria, Function<Criteria, T> query,
+            Predicate<T> condition) {
+        Criteria queryCriteria = copy(criteria);
+        long deadline = System.currentTimeMillis() + JaegerQEBase.getJaegerConf().getServer().getQueryTimeout();
+        CompletableFuture<T> result = new CompletableFuture<T>();
+        poll(queryCriteria, query, condition, deadline, INITIAL_POLL_DELAY, result);
+        return result;
+    }
+
+    private <T> void poll(Criteria criteria, Function<Criteria, T> query, Predicate<T> condition, long deadline,
+            long delay, CompletableFuture<T> result) {
+        CompletableFuture.supplyAsync(() -> query.apply(criteria), queries).whenComplete((value, ex) -> {
+            if (ex != null) {
+                result.completeExceptionally(ex);
+                return;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            try {
+                if (condition.test(value)) {
+                    result.complete(value);
+                } else if (remaining <= 0) {
+                    _logger.warn("Expected data not visible on time, {}, Result: {}", criteria, value);
+                    result.complete(value);
+                } else {
+                    polls.schedule(() -> poll(criteria, query, condition, deadline,
+                            Math.min(delay * 2, MAX_POLL_DELAY), result), Math.min(delay, remaining),
+                            TimeUnit.MILLISECONDS);
+                }
+            } catch (RuntimeException conditionEx) {
+                result.completeExceptionally(conditionEx);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        polls.shutdownNow();
+        queries.shutdownNow();
+    }
+}
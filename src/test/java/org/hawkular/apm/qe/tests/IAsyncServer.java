@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import org.hawkular.apm.qe.model.QESpan;
+
+import com.uber.jaeger.rest.model.Criteria;
+
+/**
+ * Non blocking variant of {@link IServer}: queries run concurrently, up to a limit, and complete the returned
+ * futures. Criteria are copied when a query is issued, the caller may reuse them right away.
+ *
+ * @author kearls
+ */
+public interface IAsyncServer extends AutoCloseable {
+
+    CompletableFuture<List<QESpan>> listSpan(Criteria criteria);
+
+    CompletableFuture<Integer> traceCount(Criteria criteria);
+
+    //The consumer is called from the query threads
+    CompletableFuture<Long> streamSpans(Criteria criteria, Consumer<QESpan> consumer);
+
+    /*
+     * Waiting methods poll until the expected data is visible or the query timeout expires and complete with the
+     * last result either way. No thread is held between two polls.
+     */
+    CompletableFuture<Integer> waitForTraceCount(Criteria criteria, int expectedCount);
+
+    CompletableFuture<List<QESpan>> waitForSpans(Criteria criteria, int expectedCount);
+
+    CompletableFuture<List<QESpan>> waitForSpans(Criteria criteria, Collection<QESpan> spansExpected);
+
+    @Override
+    void close();
+}
@@ -16,7 +16,10 @@
  */
 package org.hawkular.apm.qe.tests;
 
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.hawkular.apm.qe.model.QESpan;
 
@@ -34,4 +37,37 @@ public interface IServer {
     List<QESpan> listSpan(String operation, Long startTime, Long endTime);
 
     int traceCount(Criteria criteria);
+
+    /*
+     * Hands spans to the consumer while the response is decoded, instead of collecting all of them first.
+     * Returns number of spans decoded.
+     */
+    long streamSpans(Criteria criteria, Consumer<QESpan> consumer);
+
+    /*
+     * Writes the spans to a columnar store as they are decoded, to be scanned with SpanColumnReader. Fetches of any
+     * size do not need the heap for their spans. Returns number of spans written. If the fetch fails, no store is
+     * left at the path.
+     */
+    long exportSpans(Criteria criteria, Path file);
+
+    /*
+     * Services and operations may come from a cache. Invalidate it after emitting spans of new operations, to see
+     * them before the cached lists expire.
+     */
+    List<String> listServices();
+
+    List<String> listOperations(String service);
+
+    void invalidateMetadata();
+
+    /*
+     * Waiting methods poll the server until the expected data is visible or the query timeout expires, and
+     * return the last result either way. Assertions stay with the caller.
+     */
+    int waitForTraceCount(Criteria criteria, int expectedCount);
+
+    List<QESpan> waitForSpans(Criteria criteria, int expectedCount);
+
+    List<QESpan> waitForSpans(Criteria criteria, Collection<QESpan> spansExpected);
 }
@@ -16,8 +16,17 @@
  */
 package org.hawkular.apm.qe.tests;
 
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import org.hawkular.apm.qe.JaegerQEBase;
 import org.hawkular.apm.qe.model.QESpan;
@@ -25,6 +34,10 @@ import org.hawkular.apm.qe.model.QESpanBuilder;
 import org.hawkular.client.core.ClientResponse;
 import org.testng.Assert;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.uber.jaeger.rest.JaegerRestClient;
 import com.uber.jaeger.rest.model.Criteria;
 import com.uber.jaeger.rest.model.Reference;
@@ -33,89 +46,241 @@ import com.uber.jaeger.rest.model.Span;
 import com.uber.jaeger.rest.model.Tag;
 import com.uber.jaeger.rest.model.Trace;
 
-import io.opentracing.Tracer;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * @author Jeeva Kandasamy (jkandasa)
  */
 @Slf4j
-public class JaegerRestApiWrapper implements IServer {
+public class JaegerRestApiWrapper extends AbstractServer {
+    //Used to bind single spans of a streamed response, skips span fields QESpan does not use (logs, process)
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
     private JaegerRestClient client = null;
+    //Services and operations, by path of the query
+    private final TtlCache<String, List<String>> metadata = new TtlCache<String, List<String>>(this::readNames,
+            JaegerQEBase.getJaegerConf().getServer().getMetadataTtl());
 
     public JaegerRestApiWrapper(JaegerRestClient client) {
         this.client = client;
     }
 
-    private Criteria getCriteria(String operation, Long startTime, Long endTime) {
-        return Criteria.builder()
-                .service(JaegerQEBase.getJaegerConf().getServiceName())
-                .operation(operation)
-                .start(startTime)
-                .end(endTime)
-                .build();
+    private void buildSpans(List<QESpan> qeSpans, List<Trace> traces) {
+        for (Trace trace : traces) {
+            buildSpan(qeSpans, trace.getSpans());
+        }
+    }
+
+    /**
+     * Converts the spans of a single trace and links them through a span id index, which keeps this linear in the
+     * number of spans and references.
+     */
+    private void buildSpan(List<QESpan> qeSpans, List<Span> spans) {
+        if (spans == null || spans.isEmpty()) {
+            return;
+        }
+        Map<String, QESpan> spansById = new HashMap<String, QESpan>(spans.size() * 4 / 3 + 1);
+        for (Span span : spans) {
+            QESpan qeSpan = toQESpan(span);
+            spansById.put(span.getSpanID(), qeSpan);
+            qeSpans.add(qeSpan);
+        }
+        //Update parent and follows from spans
+        for (Span span : spans) {
+            if (span.getReferences() == null) {
+                continue;
+            }
+            QESpan qeSpan = spansById.get(span.getSpanID());
+            for (Reference reference : span.getReferences()) {
+                QESpan referenced = spansById.get(reference.getSpanID());
+                if (referenced == null) {
+                    _logger.debug("Referenced span not in the trace, {}", reference);
+                } else if (reference.getRefType().equalsIgnoreCase("CHILD_OF")) {
+                    if (qeSpan.getParent() == null) {
+                        qeSpan.setParent(referenced);
+                    }
+                } else if (reference.getRefType().equalsIgnoreCase("FOLLOWS_FROM")) {
+                    qeSpan.addFollowsFrom(referenced);
+                }
+            }
+        }
+    }
+
+    private QESpan toQESpan(Span span) {
+        QESpanBuilder qeSpanBuilder = QESpanBuilder.offlineBuilder(span.getOperationName());
+        qeSpanBuilder.withStartTimestamp(span.getStartTime());
+        QESpan qeSpan = qeSpanBuilder.build();
+        qeSpan.finish(span.getStartTime() + span.getDuration());
+        qeSpan.setSpanId(span.getSpanID());
+        for (Tag tag : span.getTags()) {
+            if (!tag.getKey().equalsIgnoreCase("service")) {
+                if (tag.getType().equalsIgnoreCase("string")) {
+                    qeSpan.setTag(tag.getKey(), (String) tag.getValue());
+                } else if (tag.getType().equalsIgnoreCase("bool")) {
+                    qeSpan.setTag(tag.getKey(), (Boolean) tag.getValue());
+                } else if (tag.getType().equalsIgnoreCase("int64")) {
+                    qeSpan.setTag(tag.getKey(), (Number) tag.getValue());
+                } else if (tag.getType().equalsIgnoreCase("float64")) {
+                    //Whole values come back as integers from JSON
+                    qeSpan.setTag(tag.getKey(), ((Number) tag.getValue()).doubleValue());
+                } else if (tag.getType().equalsIgnoreCase("binary")) {
+                    qeSpan.setTag(tag.getKey(), (Boolean) tag.getValue());
+                }
+            }
+        }
+        return qeSpan;
     }
 
-    private void updateCriteria(Criteria criteria) {
-        if (criteria.getService() == null) {
-            criteria.setService(JaegerQEBase.getJaegerConf().getServiceName());
+    private String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    //Query parameters of /api/traces, criteria start and end should be in microseconds already
+    private String toQueryString(Criteria criteria) {
+        StringBuilder query = new StringBuilder("service=").append(encode(criteria.getService()));
+        if (criteria.getOperation() != null) {
+            query.append("&operation=").append(encode(criteria.getOperation()));
         }
         if (criteria.getStart() != null) {
-            criteria.setStart(criteria.getStart() * 1000L);
+            query.append("&start=").append(criteria.getStart());
         }
         if (criteria.getEnd() != null) {
-            criteria.setEnd(criteria.getEnd() * 1000L);
+            query.append("&end=").append(criteria.getEnd());
+        }
+        Integer limit = JaegerQEBase.getJaegerConf().getServer().getQueryLimit();
+        if (limit != null) {
+            query.append("&limit=").append(limit);
         }
+        return query.toString();
     }
 
-    private void buildSpan(List<QESpan> qeSpans, List<Span> spans) {
-        QESpan parent = null;
-        if (spans == null || spans.isEmpty()) {
-            return;
+    private HttpURLConnection openTraces(Criteria criteria) throws IOException {
+        return open("/api/traces?" + toQueryString(criteria));
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        URL url = new URL(JaegerQEBase.getJaegerConf().getServer().getUrl() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty("Accept", "application/json");
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            Assert.fail("Unexpected response " + status + ", " + url);
         }
-        for (Span span : spans) {
-            Tracer.SpanBuilder qeSpanBuilder = QESpanBuilder.offlineBuilder(span.getOperationName())
-                    .withStartTimestamp(span.getStartTime())
-                    .asChildOf(parent);
-            QESpan qeSpan = ((QESpanBuilder) qeSpanBuilder).build();
-            qeSpan.finish(span.getStartTime() + span.getDuration());
-            qeSpan.setSpanId(span.getSpanID());
-            for (Tag tag : span.getTags()) {
-                if (!tag.getKey().equalsIgnoreCase("service")) {
-                    if (tag.getType().equalsIgnoreCase("string")) {
-                        qeSpan.setTag(tag.getKey(), (String) tag.getValue());
-                    } else if (tag.getType().equalsIgnoreCase("bool")) {
-                        qeSpan.setTag(tag.getKey(), (Boolean) tag.getValue());
-                    } else if (tag.getType().equalsIgnoreCase("int64")) {
-                        qeSpan.setTag(tag.getKey(), (Integer) tag.getValue());
-                    } else if (tag.getType().equalsIgnoreCase("float64")) {
-                        qeSpan.setTag(tag.getKey(), (Float) tag.getValue());
-                    } else if (tag.getType().equalsIgnoreCase("binary")) {
-                        qeSpan.setTag(tag.getKey(), (Boolean) tag.getValue());
+        return connection;
+    }
+
+    /**
+     * Reads /api/traces response with a streaming parser and passes each trace object of 'data' to the reader,
+     * positioned at the start of the object. Returns sum of the reader results. The response is read to the end
+     * and closed, not disconnected, so the connection goes back to the keep-alive pool for the next query.
+     */
+    private long readTraces(Criteria criteria, TraceReader reader) {
+        HttpURLConnection connection = null;
+        long count = 0;
+        boolean complete = false;
+        try {
+            connection = openTraces(criteria);
+            try (JsonParser parser = MAPPER.getFactory().createParser(connection.getInputStream())) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    return 0;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    if (parser.nextToken() == JsonToken.START_ARRAY && field.equals("data")) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            count += reader.read(parser);
+                        }
+                    } else {
+                        parser.skipChildren();
                     }
                 }
             }
-            qeSpans.add(qeSpan);
+            complete = true;
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to read traces, " + criteria, ex);
+        } finally {
+            //Left in an unknown state, not reusable
+            if (connection != null && !complete) {
+                connection.disconnect();
+            }
         }
-        //Update parent spans
-        for (Span span : spans) {
-            if (span.getReferences() != null && !span.getReferences().isEmpty()) {
-                Reference refrance = span.getReferences().get(0);
-                if (refrance.getRefType().equalsIgnoreCase("CHILD_OF")) {
-                    QESpan qeSpan = getSpanById(qeSpans, span.getSpanID());
-                    qeSpan.setParent(getSpanById(qeSpans, refrance.getSpanID()));
+        return count;
+    }
+
+    private interface TraceReader {
+        long read(JsonParser parser) throws IOException;
+    }
+
+    private long decodeSpans(Criteria criteria, Consumer<QESpan> consumer) {
+        return readTraces(criteria, parser -> decodeTrace(parser, consumer));
+    }
+
+    //Counts trace objects without building any of them
+    private int countTraces(Criteria criteria) {
+        return (int) readTraces(criteria, parser -> {
+            parser.skipChildren();
+            return 1;
+        });
+    }
+
+    /**
+     * Decodes one trace object. Spans of a trace are linked together before they are handed over, so only the
+     * trace being decoded is held in memory.
+     */
+    private int decodeTrace(JsonParser parser, Consumer<QESpan> consumer) throws IOException {
+        List<Span> spans = new ArrayList<Span>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.START_ARRAY && field.equals("spans")) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    spans.add(MAPPER.readValue(parser, Span.class));
                 }
+            } else {
+                parser.skipChildren();
             }
         }
+        List<QESpan> qeSpans = new ArrayList<QESpan>(spans.size());
+        buildSpan(qeSpans, spans);
+        qeSpans.forEach(consumer);
+        return qeSpans.size();
     }
 
-    private QESpan getSpanById(List<QESpan> qeSpans, String spanId) {
-        for (QESpan qeSpan : qeSpans) {
-            if (qeSpan.getSpanId().equals(spanId)) {
-                return qeSpan;
+    //Strings of 'data', as /api/services and /api/operations return them
+    private List<String> readNames(String path) {
+        List<String> names = new ArrayList<String>();
+        HttpURLConnection connection = null;
+        boolean complete = false;
+        try {
+            connection = open(path);
+            try (JsonParser parser = MAPPER.getFactory().createParser(connection.getInputStream())) {
+                if (parser.nextToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = parser.getCurrentName();
+                        if (parser.nextToken() == JsonToken.START_ARRAY && field.equals("data")) {
+                            while (parser.nextToken() == JsonToken.VALUE_STRING) {
+                                names.add(parser.getText());
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            }
+            complete = true;
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to read " + path, ex);
+        } finally {
+            if (connection != null && !complete) {
+                connection.disconnect();
             }
         }
-        return null;
+        return Collections.unmodifiableList(names);
     }
 
     private void assertResponse(ClientResponse<?> response) {
@@ -129,7 +294,10 @@ public class JaegerRestApiWrapper implements IServer {
 
     @Override
     public List<QESpan> listSpan(Criteria criteria) {
-        updateCriteria(criteria);
+        return query(criteria, this::fetchSpans);
+    }
+
+    private List<QESpan> fetchSpans(Criteria criteria) {
         List<QESpan> qeSpans = new ArrayList<QESpan>();
         ClientResponse<Result<Trace>> traceResponse = client.trace().list(
                 criteria);
@@ -138,27 +306,37 @@ public class JaegerRestApiWrapper implements IServer {
                 || traceResponse.getEntity().getData().isEmpty()) {
             return qeSpans;
         }
-        List<Span> jaegerSpans = traceResponse.getEntity().getData().get(0).getSpans();
-        _logger.debug("{}, Result: {}", criteria, jaegerSpans);
-        if (!jaegerSpans.isEmpty()) {
-            buildSpan(qeSpans, jaegerSpans);
-        }
+        List<Trace> traces = traceResponse.getEntity().getData();
+        _logger.debug("{}, Result: {}", criteria, traces);
+        buildSpans(qeSpans, traces);
         return qeSpans;
     }
 
     public int traceCount(Criteria criteria) {
-        updateCriteria(criteria);
-        ClientResponse<Result<Trace>> traceResponse = client.trace().list(criteria);
-        assertResponse(traceResponse);
-        if (traceResponse.getEntity().getData() == null
-                || traceResponse.getEntity().getData().isEmpty()) {
-            return 0;
-        }
-        return traceResponse.getEntity().getData().size();
+        return query(criteria, this::countTraces);
+    }
+
+    @Override
+    public long streamSpans(Criteria criteria, Consumer<QESpan> consumer) {
+        return query(criteria, queryCriteria -> decodeSpans(queryCriteria, consumer));
     }
 
     @Override
-    public List<QESpan> listSpan(String operation, Long startTime, Long endTime) {
-        return listSpan(getCriteria(operation, startTime, endTime));
+    public List<String> listServices() {
+        return metadata.get("/api/services");
+    }
+
+    @Override
+    public List<String> listOperations(String service) {
+        return metadata.get("/api/operations?service=" + encode(service));
+    }
+
+    @Override
+    public void invalidateMetadata() {
+        metadata.invalidateAll();
+    }
+
+    public TtlCache<String, List<String>> getMetadataCache() {
+        return metadata;
     }
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests;
+
+import java.util.List;
+
+import org.testng.IAlterSuiteListener;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlSuite.ParallelMode;
+import org.testng.xml.XmlTest;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sizes thread pool of the tests running methods in parallel to the number of cores.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class ParallelSuiteListener implements IAlterSuiteListener {
+
+    @Override
+    public void alter(List<XmlSuite> suites) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (XmlSuite suite : suites) {
+            for (XmlTest test : suite.getTests()) {
+                if (test.getParallel() == ParallelMode.METHODS) {
+                    _logger.info("Running methods of '{}' on {} threads", test.getName(), cores);
+                    test.setThreadCount(cores);
+                }
+            }
+        }
+    }
+}
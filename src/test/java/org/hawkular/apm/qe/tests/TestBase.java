@@ -16,10 +16,19 @@
  */
 package org.hawkular.apm.qe.tests;
 
+import java.lang.reflect.Method;
+import java.net.SocketException;
 import java.net.URISyntaxException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.hawkular.apm.qe.JaegerQEBase;
 import org.hawkular.apm.qe.model.QETracer;
+import org.hawkular.apm.qe.tracer.FlushResult;
+import org.hawkular.apm.qe.tracer.ITracer;
+import org.hawkular.apm.qe.tracer.MetricsSnapshot;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.AfterSuite;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.BeforeSuite;
 
 import com.uber.jaeger.rest.JaegerRestClient;
@@ -32,10 +41,28 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 public class TestBase extends JaegerQEBase {
-    private static Tracer _tracer = null;
-    private static QETracer _qeTracer = null;
-    private static JaegerRestClient _restClient = null;
-    private static IServer _server = null;
+    //Where the tests read their spans back from
+    public enum SERVER_TYPE {
+        JAEGER_REST_API,
+        AGENT_CAPTURE;
+    }
+
+    private static final SERVER_TYPE SERVER = SERVER_TYPE.valueOf(System.getenv().getOrDefault("JAEGER_QE_SERVER",
+            SERVER_TYPE.JAEGER_REST_API.name()));
+    //The agent capture server only reads what Jaeger sends to the agent
+    private static final INSTRUMENTATION_TYPE INSTRUMENTATION = INSTRUMENTATION_TYPE.valueOf(System.getenv()
+            .getOrDefault("JAEGER_QE_INSTRUMENTATION", INSTRUMENTATION_TYPE.JAEGER_OPENTRACING.name()));
+
+    //Set once before the suite, read from all the test threads
+    private static volatile ITracer _instrumentation = null;
+    private static volatile Tracer _tracer = null;
+    private static volatile QETracer _qeTracer = null;
+    private static volatile JaegerRestClient _restClient = null;
+    private static volatile IServer _server = null;
+    private static volatile IAsyncServer _asyncServer = null;
+    private static final AtomicLong _operationId = new AtomicLong(System.currentTimeMillis());
+    //Client metrics when the test method of this thread started
+    private static final ThreadLocal<MetricsSnapshot> _metricsBefore = new ThreadLocal<MetricsSnapshot>();
 
     //Returns tracer instance to test classes
     public Tracer tracer() {
@@ -57,12 +84,77 @@ public class TestBase extends JaegerQEBase {
         return _server;
     }
 
+    //Returns concurrent query interface of the same server to test classes
+    public IAsyncServer asyncServer() {
+        return _asyncServer;
+    }
+
+    //Returns client side metrics of the tracer to test classes
+    public MetricsSnapshot metrics() {
+        return _instrumentation.getMetrics();
+    }
+
+    /*
+     * Returns an operation name no other test uses, in this or previous runs. Tests running in parallel should
+     * query by their own operations only, to stay out of each other's data.
+     */
+    public String uniqueOperation(String prefix) {
+        return prefix + "-" + Thread.currentThread().getId() + "-" + _operationId.incrementAndGet();
+    }
+
     @BeforeSuite
-    public void loadRequiredinstance() throws URISyntaxException {
-        _tracer = JaegerQEBase.getInstrumentation(INSTRUMENTATION_TYPE.JAEGER_OPENTRACING).getTracer();
+    public void loadRequiredinstance() throws URISyntaxException, SocketException {
+        if (SERVER == SERVER_TYPE.AGENT_CAPTURE) {
+            //Listen before the tracer sends anything
+            _server = new AgentCaptureServer(getJaegerConf().getAgent().getPort());
+        }
+        _instrumentation = JaegerQEBase.getInstrumentation(INSTRUMENTATION);
+        _tracer = _instrumentation.getTracer();
         _qeTracer = new QETracer(tracer());
         _restClient = JaegerQEBase.getRestClient();
-        _server = new JaegerRestApiWrapper(restClient());
+        if (SERVER == SERVER_TYPE.JAEGER_REST_API) {
+            _server = new JaegerRestApiWrapper(restClient());
+        }
+        _asyncServer = new AsyncServer(_server, getJaegerConf().getServer().getQueryConcurrency());
+    }
+
+    @BeforeMethod
+    public void snapshotMetrics() {
+        _metricsBefore.set(metrics());
+    }
+
+    /*
+     * Logs what the client did during the test, so spans dropped or failed on the client side show up next to
+     * the test instead of as missing traces. With parallel tests the counters include the other tests running.
+     */
+    @AfterMethod
+    public void logMetrics(Method method) {
+        MetricsSnapshot delta = metrics().delta(_metricsBefore.get());
+        if (delta.getSpansLost() > 0) {
+            _logger.warn("Client lost spans in {}, dropped: {}, failed: {}, metrics: {}", method.getName(),
+                    delta.getSpansDropped(), delta.getSpansFailed(), delta.getCounters());
+        } else {
+            _logger.debug("Client metrics of {}: {}, queue length: {}", method.getName(), delta.getCounters(),
+                    delta.getQueueLength());
+        }
+    }
+
+    @AfterSuite
+    public void closeServer() {
+        if (_instrumentation != null) {
+            _logger.info("Closed tracer, {}", _instrumentation.close(getJaegerConf().getAgent().getFlushTimeout()));
+        }
+        if (_asyncServer != null) {
+            _asyncServer.close();
+        }
+        if (_server instanceof AgentCaptureServer) {
+            ((AgentCaptureServer) _server).close();
+        }
+    }
+
+    //Sends the spans finished so far and waits until they are sent, instead of sleeping for a flush interval
+    public FlushResult flush() {
+        return _instrumentation.flush(getJaegerConf().getAgent().getFlushTimeout());
     }
 
     public void sleep() {
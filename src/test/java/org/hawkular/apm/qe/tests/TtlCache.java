@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Values loaded on first use and kept for a time to live. Threads asking for a key being loaded wait for that load
+ * instead of starting their own, and count as hits: a miss is a call to the loader. A failed load is not kept,
+ * the threads waiting for it get the error of the loader.
+ *
+ * @author kearls
+ */
+public class TtlCache<K, V> {
+    private final Function<K, V> loader;
+    private final long ttlNanos;
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<K, Entry<V>>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private static class Entry<V> {
+        private final CompletableFuture<V> value = new CompletableFuture<V>();
+        private final long expires;
+
+        private Entry(long expires) {
+            this.expires = expires;
+        }
+    }
+
+    //Time to live in milliseconds
+    public TtlCache(Function<K, V> loader, long ttl) {
+        this.loader = loader;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttl);
+    }
+
+    public V get(K key) {
+        while (true) {
+            Entry<V> entry = entries.get(key);
+            long now = System.nanoTime();
+            if (entry != null && entry.expires - now > 0) {
+                hits.increment();
+                return join(entry);
+            }
+            Entry<V> loading = new Entry<V>(now + ttlNanos);
+            boolean won = entry == null ? entries.putIfAbsent(key, loading) == null
+                    : entries.replace(key, entry, loading);
+            if (!won) {
+                //Another thread got there first, wait for its load
+                continue;
+            }
+            misses.increment();
+            try {
+                V value = loader.apply(key);
+                loading.value.complete(value);
+                return value;
+            } catch (Throwable ex) {
+                //Assertion errors included, or the waiters would block until the entry expires
+                entries.remove(key, loading);
+                loading.value.completeExceptionally(ex);
+                throw ex;
+            }
+        }
+    }
+
+    //Value of the entry, or the error of its loader
+    private V join(Entry<V> entry) {
+        try {
+            return entry.value.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "TtlCache(size=" + entries.size() + ", hits=" + getHits() + ", misses=" + getMisses() + ")";
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.load;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.HdrHistogram.Histogram;
+import org.hawkular.apm.qe.load.LatencyReport;
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.tests.IServer;
+import org.hawkular.apm.qe.tracer.SpanIds;
+
+import com.uber.jaeger.rest.model.Criteria;
+
+import io.opentracing.Span;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Measures ingestion latency: the time from a span's finish timestamp to the first query which returns it. A
+ * sample of the finished spans handed to {@link #accept(Span)} is tracked, and a poller queries the server for
+ * them every poll interval. Latency is recorded against the time the query which returned the span was issued, so
+ * the query time is left out and it is accurate to the poll interval. Each query starts at the oldest span still
+ * pending, so spans already seen are not read again.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class IngestionLatencyProbe implements Consumer<Span> {
+    private final IServer server;
+    private final Criteria criteria;
+    private final double sampleRatio;
+    //Span id of the tracked spans, to the spans
+    private final Map<String, QESpan> pending = new ConcurrentHashMap<String, QESpan>();
+    //Written by the poller thread only
+    private final Histogram histogram = new Histogram(3);
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * @param criteria selects the spans tracked, start and end in milliseconds
+     * @param sampleRatio share of the finished spans to track, 0 to 1
+     * @param pollInterval milliseconds between the end of a query and the next one
+     */
+    public IngestionLatencyProbe(IServer server, Criteria criteria, double sampleRatio, long pollInterval) {
+        this.server = server;
+        this.criteria = criteria;
+        this.sampleRatio = sampleRatio;
+        poller.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void accept(Span span) {
+        //Spans the tracer did not sample never reach the server
+        if (!SpanIds.sampled(span.context()) || ThreadLocalRandom.current().nextDouble() >= sampleRatio) {
+            return;
+        }
+        pending.put(SpanIds.spanId(span.context()), (QESpan) span);
+    }
+
+    private void poll() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        //Criteria select spans by start, in milliseconds
+        long oldest = Long.MAX_VALUE;
+        for (QESpan span : pending.values()) {
+            oldest = Math.min(oldest, span.getStart() / 1000L);
+        }
+        Criteria narrowed = Criteria.builder()
+                .service(criteria.getService())
+                .operation(criteria.getOperation())
+                .start(criteria.getStart() == null ? oldest : Math.max(criteria.getStart(), oldest))
+                .end(criteria.getEnd())
+                .build();
+        long issued = System.currentTimeMillis() * 1000L;
+        try {
+            server.streamSpans(narrowed, span -> {
+                QESpan tracked = pending.remove(span.getSpanId());
+                if (tracked != null) {
+                    histogram.recordValue(Math.max(0L, issued - tracked.getEnd()));
+                }
+            });
+        } catch (Exception ex) {
+            //Keep polling, a later query may succeed
+            _logger.error("Exception,", ex);
+        }
+    }
+
+    /**
+     * Waits until all the tracked spans have been seen or the timeout expires, stops polling and returns the
+     * latency percentiles. Spans never seen are reported as missing.
+     */
+    public LatencyReport await(String name, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!pending.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        poller.shutdown();
+        poller.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        return LatencyReport.from(name, histogram, pending.size());
+    }
+}
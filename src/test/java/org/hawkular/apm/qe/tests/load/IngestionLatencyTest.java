@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.load;
+
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hawkular.apm.qe.load.LatencyReport;
+import org.hawkular.apm.qe.load.LoadConf;
+import org.hawkular.apm.qe.load.SpanLoadGenerator;
+import org.hawkular.apm.qe.tests.TestBase;
+import org.hawkular.apm.qe.tracer.JaegerOpenTracing;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.uber.jaeger.rest.model.Criteria;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ingestion latency, from span finish to query visibility, at different emission rates.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class IngestionLatencyTest extends TestBase {
+    //Spans tracked per second of load, whatever the rate
+    private static final double SAMPLES_PER_SECOND = 50.0;
+    private static final long POLL_INTERVAL = 50L;
+
+    private final List<LatencyReport> reports = new ArrayList<LatencyReport>();
+
+    @DataProvider(name = "rates")
+    public Object[][] rates() {
+        return new Object[][] { { 10 }, { 100 }, { 1000 } };
+    }
+
+    @Test(dataProvider = "rates")
+    public void ingestionLatencyTest(int spansPerSecond) throws Exception {
+        LoadConf conf = LoadConf.builder()
+                .operation(uniqueOperation("ingestionLatencyTest"))
+                .threads(2)
+                .spansPerSecond(spansPerSecond)
+                .duration(5000L)
+                .build();
+        Criteria criteria = Criteria.builder()
+                .operation(conf.getOperation())
+                .start(System.currentTimeMillis())
+                .build();
+        IngestionLatencyProbe probe = new IngestionLatencyProbe(server(), criteria,
+                Math.min(1.0, SAMPLES_PER_SECOND / spansPerSecond), POLL_INTERVAL);
+
+        new SpanLoadGenerator(qeTracer(), JaegerOpenTracing.getInstance().getStatsReporter(), conf, probe).run();
+        LatencyReport report = probe.await(spansPerSecond + " spans/s",
+                getJaegerConf().getServer().getQueryTimeout());
+        synchronized (reports) {
+            reports.add(report);
+        }
+        assertTrue(report.getCount() > 0, "No span became visible: " + report);
+    }
+
+    @AfterClass
+    public void logReports() {
+        StringBuilder table = new StringBuilder(LatencyReport.header());
+        for (LatencyReport report : reports) {
+            table.append('\n').append(report.row());
+        }
+        _logger.info("Ingestion latency by emission rate:\n{}", table);
+    }
+}
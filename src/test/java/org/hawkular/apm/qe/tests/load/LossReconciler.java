@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.load;
+
+import org.hawkular.apm.qe.load.LoadResult;
+import org.hawkular.apm.qe.load.LossReport;
+import org.hawkular.apm.qe.load.SequenceAudit;
+import org.hawkular.apm.qe.model.conf.JaegerAgentConf;
+import org.hawkular.apm.qe.tests.IServer;
+
+import com.uber.jaeger.rest.model.Criteria;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads the spans of an audited load run back from the server and reconciles their sequence numbers.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class LossReconciler {
+    private final IServer server;
+
+    public LossReconciler(IServer server) {
+        this.server = server;
+    }
+
+    public LossReport reconcile(LoadResult result, JaegerAgentConf agent) {
+        //Load spans are root spans, a trace each. Criteria take milliseconds, the run range is in microseconds
+        Criteria criteria = Criteria.builder()
+                .operation(result.getConf().getOperation())
+                .start(result.getStart() / 1000L)
+                .end(result.getEnd() / 1000L + 1L)
+                .build();
+        //Spans the client lost will never show up, do not wait for them
+        server.waitForTraceCount(criteria, (int) (result.getEmitted() - result.getLost()));
+        SequenceAudit audit = new SequenceAudit(result);
+        long read = server.streamSpans(criteria, span -> audit.accept(span.getTags()));
+        LossReport report = audit.report(agent);
+        _logger.info("Read {} spans, {}", read, report);
+        return report;
+    }
+}
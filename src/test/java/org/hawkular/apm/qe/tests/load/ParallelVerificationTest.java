@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.load;
+
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.QETracer;
+import org.hawkular.apm.qe.model.SpanMatcher;
+import org.hawkular.apm.qe.model.conf.JaegerAgentConf;
+import org.hawkular.apm.qe.tests.AsyncServer;
+import org.hawkular.apm.qe.tests.TestBase;
+import org.hawkular.apm.qe.tracer.ConcurrentStatsReporter;
+import org.hawkular.apm.qe.tracer.JaegerOpenTracing;
+import org.testng.annotations.Test;
+
+import com.uber.jaeger.rest.model.Criteria;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Verifies a run across many operations with concurrent queries, one per operation.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class ParallelVerificationTest extends TestBase {
+    private static final int OPERATIONS = 200;
+    private static final int CHILDREN = 2;
+
+    @Test
+    public void parallelVerificationTest() throws Exception {
+        JaegerAgentConf agent = getJaegerConf().getAgent().toBuilder()
+                .queueSize(OPERATIONS * (CHILDREN + 1))
+                .build();
+        long start = System.currentTimeMillis();
+        List<String> operations = new ArrayList<String>();
+        List<List<QESpan>> spansExpected = new ArrayList<List<QESpan>>();
+
+        com.uber.jaeger.Tracer tracer = JaegerOpenTracing.createTracer(agent, getJaegerConf().getServiceName(),
+                new ConcurrentStatsReporter());
+        try {
+            QETracer qeTracer = new QETracer(tracer);
+            for (int index = 0; index < OPERATIONS; index++) {
+                String operation = uniqueOperation("parallelVerificationTest");
+                List<QESpan> spans = new ArrayList<QESpan>();
+                QESpan root = (QESpan) qeTracer.buildSpan(operation).start();
+                spans.add(root);
+                for (int child = 0; child < CHILDREN; child++) {
+                    QESpan span = (QESpan) qeTracer.buildSpan(operation + "-child").asChildOf(root).start();
+                    span.finish();
+                    spans.add(span);
+                }
+                root.finish();
+                operations.add(operation);
+                spansExpected.add(spans);
+            }
+        } finally {
+            //Flushes the spans still queued
+            tracer.close();
+        }
+
+        long queryStart = System.currentTimeMillis();
+        List<CompletableFuture<List<QESpan>>> queries = new ArrayList<CompletableFuture<List<QESpan>>>();
+        for (int index = 0; index < OPERATIONS; index++) {
+            Criteria criteria = Criteria.builder().operation(operations.get(index)).start(start).build();
+            queries.add(asyncServer().waitForSpans(criteria, spansExpected.get(index)));
+        }
+        List<List<QESpan>> results = AsyncServer.all(queries).get();
+        _logger.info("Verified {} operations in {} ms, {} queries at a time", OPERATIONS,
+                System.currentTimeMillis() - queryStart, getJaegerConf().getServer().getQueryConcurrency());
+
+        for (int index = 0; index < OPERATIONS; index++) {
+            List<QESpan> missing = new SpanMatcher(results.get(index)).missing(spansExpected.get(index));
+            assertTrue(missing.isEmpty(), operations.get(index) + " spans missing: " + missing);
+        }
+    }
+}
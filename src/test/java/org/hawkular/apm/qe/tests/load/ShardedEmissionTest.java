@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.load;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.conf.JaegerAgentConf;
+import org.hawkular.apm.qe.tests.AgentCaptureServer;
+import org.hawkular.apm.qe.tests.TestBase;
+import org.hawkular.apm.qe.tracer.ConcurrentStatsReporter;
+import org.hawkular.apm.qe.tracer.JaegerOpenTracing;
+import org.hawkular.apm.qe.tracer.MetricsSnapshot;
+import org.testng.annotations.Test;
+
+import com.uber.jaeger.rest.model.Criteria;
+
+import io.opentracing.Span;
+
+/**
+ * Shards traces over several capturing agents and checks that every trace lands whole on one of them, in the
+ * numbers the sender counted for it.
+ *
+ * @author kearls
+ */
+public class ShardedEmissionTest extends TestBase {
+    private static final int AGENTS = 3;
+    private static final int TRACES = 300;
+    private static final int CHILDREN = 3;
+
+    @Test
+    public void shardByTraceTest() throws Exception {
+        List<AgentCaptureServer> servers = new ArrayList<AgentCaptureServer>();
+        List<String> endpoints = new ArrayList<String>();
+        try {
+            for (int i = 0; i < AGENTS; i++) {
+                int port = freePort();
+                servers.add(new AgentCaptureServer(port));
+                endpoints.add("localhost:" + port);
+            }
+            JaegerAgentConf agent = getJaegerConf().getAgent().toBuilder()
+                    .sender(JaegerAgentConf.SENDER_TYPE.UDP)
+                    .agents(endpoints)
+                    .queueSize(TRACES * (CHILDREN + 1))
+                    .build();
+            String operation = uniqueOperation("sharded");
+            long start = System.currentTimeMillis();
+            ConcurrentStatsReporter statsReporter = new ConcurrentStatsReporter();
+            com.uber.jaeger.Tracer tracer = JaegerOpenTracing.createTracer(agent, getJaegerConf().getServiceName(),
+                    statsReporter);
+            try {
+                for (int i = 0; i < TRACES; i++) {
+                    Span root = tracer.buildSpan(operation).start();
+                    for (int child = 0; child < CHILDREN; child++) {
+                        tracer.buildSpan(operation + "-child").asChildOf(root).start().finish();
+                    }
+                    root.finish();
+                }
+            } finally {
+                //Flushes and closes every agent sender
+                tracer.close();
+            }
+
+            MetricsSnapshot snapshot = statsReporter.snapshot();
+            long received = 0;
+            Criteria criteria = Criteria.builder().operation(operation).start(start).build();
+            for (int i = 0; i < AGENTS; i++) {
+                long sent = snapshot.getEndpointSpansSent(endpoints.get(i));
+                assertEquals(snapshot.getEndpointSpansDropped(endpoints.get(i)), 0L);
+                //Each agent should get about a third of the traces
+                assertTrue(sent > TRACES * (CHILDREN + 1) / AGENTS / 3, endpoints.get(i) + " sent " + sent);
+
+                List<QESpan> spans = servers.get(i).waitForSpans(criteria, (int) sent);
+                assertEquals(spans.size(), sent, endpoints.get(i));
+                assertEquals(servers.get(i).getSpanCount(), sent, endpoints.get(i));
+                for (QESpan span : spans) {
+                    //The parent of a child came to the same agent
+                    if (!span.getOperation().equals(operation)) {
+                        assertNotNull(span.getParent(), "Parent of " + span);
+                    }
+                }
+                received += sent;
+            }
+            assertEquals(received, TRACES * (CHILDREN + 1));
+        } finally {
+            for (AgentCaptureServer server : servers) {
+                server.close();
+            }
+        }
+    }
+
+    private static int freePort() throws SocketException {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.load;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.hawkular.apm.qe.load.LoadConf;
+import org.hawkular.apm.qe.load.LoadResult;
+import org.hawkular.apm.qe.load.SpanLoadGenerator;
+import org.hawkular.apm.qe.tests.TestBase;
+import org.hawkular.apm.qe.tracer.JaegerOpenTracing;
+import org.testng.annotations.Test;
+
+/**
+ * @author kearls
+ */
+public class SpanLoadTest extends TestBase {
+
+    /**
+     * Emit spans at a moderate rate from a few threads, the client should keep up without dropping any.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void moderateRateLoadTest() throws Exception {
+        LoadConf conf = LoadConf.builder()
+                .operation(uniqueOperation("moderateRateLoadTest"))
+                .threads(4)
+                .spansPerSecond(200)
+                .duration(2000L)
+                .build();
+        LoadResult result = new SpanLoadGenerator(qeTracer(), JaegerOpenTracing.getInstance().getStatsReporter(),
+                conf).run();
+
+        assertTrue(result.getEmitted() > 0, "No spans emitted: " + result);
+        assertTrue(result.getThroughput() <= conf.getSpansPerSecond() * 1.1, "Target rate exceeded: " + result);
+        assertEquals(result.getDropped().longValue(), 0L, "Spans dropped: " + result);
+        //Every span emitted went through the client
+        assertTrue(result.getMetrics().getSpansFinished() >= result.getEmitted(), "Spans not counted: " + result);
+    }
+}
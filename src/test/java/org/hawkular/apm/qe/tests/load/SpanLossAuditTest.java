@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.load;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.hawkular.apm.qe.load.LoadConf;
+import org.hawkular.apm.qe.load.LoadResult;
+import org.hawkular.apm.qe.load.LossReport;
+import org.hawkular.apm.qe.load.SpanLoadGenerator;
+import org.hawkular.apm.qe.model.QETracer;
+import org.hawkular.apm.qe.model.conf.JaegerAgentConf;
+import org.hawkular.apm.qe.tests.TestBase;
+import org.hawkular.apm.qe.tracer.ConcurrentStatsReporter;
+import org.hawkular.apm.qe.tracer.JaegerOpenTracing;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Emits sequence numbered spans with different agent settings and reports how many of them the server has.
+ * Loss itself is not asserted, the point is the report; spans should never come back twice though.
+ *
+ * @author kearls
+ */
+@Slf4j
+public class SpanLossAuditTest extends TestBase {
+    private final List<LossReport> reports = new ArrayList<LossReport>();
+
+    //Packet size, queue size and flush interval
+    @DataProvider(name = "agentSettings")
+    public Object[][] agentSettings() {
+        return new Object[][] {
+                { 0, 50, 100 },
+                { 0, 1000, 100 },
+                { 0, 50, 1000 },
+                { 1500, 50, 100 },
+                { 1500, 1000, 100 }
+        };
+    }
+
+    @Test(dataProvider = "agentSettings")
+    public void lossAuditTest(int packetSize, int queueSize, int flushInterval) throws Exception {
+        JaegerAgentConf agent = getJaegerConf().getAgent().toBuilder()
+                .packetSize(packetSize)
+                .queueSize(queueSize)
+                .flushInterval(flushInterval)
+                .build();
+        LoadConf conf = LoadConf.builder()
+                .operation(uniqueOperation("lossAuditTest"))
+                .auditRunId(UUID.randomUUID().toString())
+                .threads(4)
+                .spansPerSecond(5000)
+                .duration(2000L)
+                .build();
+
+        ConcurrentStatsReporter statsReporter = new ConcurrentStatsReporter();
+        com.uber.jaeger.Tracer tracer = JaegerOpenTracing.createTracer(agent, getJaegerConf().getServiceName(),
+                statsReporter);
+        LoadResult result;
+        try {
+            result = new SpanLoadGenerator(new QETracer(tracer), statsReporter, conf).run();
+        } finally {
+            //Flushes the spans still queued
+            tracer.close();
+        }
+
+        LossReport report = new LossReconciler(server()).reconcile(result, agent);
+        synchronized (reports) {
+            reports.add(report);
+        }
+        assertEquals(report.getDuplicates().longValue(), 0L, "Duplicated spans: " + report);
+        assertEquals(report.getUnexpected().longValue(), 0L, "Unexpected sequence numbers: " + report);
+    }
+
+    @AfterClass
+    public void logReports() {
+        StringBuilder table = new StringBuilder(LossReport.header());
+        for (LossReport report : reports) {
+            table.append('\n').append(report.row());
+        }
+        _logger.info("Span loss by agent settings:\n{}", table);
+    }
+}
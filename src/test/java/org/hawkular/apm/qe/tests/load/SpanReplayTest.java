@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.load;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.hawkular.apm.qe.load.ReplayResult;
+import org.hawkular.apm.qe.load.SpanRecorder;
+import org.hawkular.apm.qe.load.SpanReplayer;
+import org.hawkular.apm.qe.load.TopologyConf;
+import org.hawkular.apm.qe.load.TraceTopologyGenerator;
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.QETracer;
+import org.hawkular.apm.qe.model.TraceDiff;
+import org.hawkular.apm.qe.model.conf.JaegerAgentConf;
+import org.hawkular.apm.qe.tests.TestBase;
+import org.hawkular.apm.qe.tracer.ConcurrentStatsReporter;
+import org.hawkular.apm.qe.tracer.JaegerOpenTracing;
+import org.testng.annotations.Test;
+
+import com.uber.jaeger.reporters.InMemoryReporter;
+import com.uber.jaeger.rest.model.Criteria;
+import com.uber.jaeger.samplers.ConstSampler;
+
+/**
+ * Records a trace without sending it, replays the recording to the server and checks the replay matches the
+ * recorded trace, and the server assembles the trace as replayed.
+ *
+ * @author kearls
+ */
+public class SpanReplayTest extends TestBase {
+    private static final int SPANS = 341;
+
+    @Test
+    public void recordAndReplayTest() throws Exception {
+        TopologyConf conf = TopologyConf.builder()
+                .operation(uniqueOperation("replay"))
+                .depth(4)
+                .fanOut(4)
+                .followsFromRatio(0.3)
+                .maxSpans(SPANS)
+                .seed(1L)
+                .build();
+        Path file = Files.createTempFile("spans", ".qesr");
+        try {
+            //Recorded with an in memory reporter, only the replay reaches the server
+            com.uber.jaeger.Tracer recordingTracer = new com.uber.jaeger.Tracer.Builder(
+                    getJaegerConf().getServiceName(), new InMemoryReporter(), new ConstSampler(true)).build();
+            List<QESpan> spansRecorded;
+            try (SpanRecorder recorder = new SpanRecorder(file)) {
+                spansRecorded = new TraceTopologyGenerator(new QETracer(recordingTracer, recorder), conf).generate();
+                assertEquals(recorder.getRecorded(), SPANS);
+            }
+            assertTrue(spansRecorded.stream().anyMatch(span -> !span.getFollowsFrom().isEmpty()),
+                    "No FOLLOWS_FROM reference recorded");
+
+            JaegerAgentConf agent = getJaegerConf().getAgent().toBuilder()
+                    .queueSize(SPANS * 2)
+                    .build();
+            long start = System.currentTimeMillis();
+            ConcurrentStatsReporter statsReporter = new ConcurrentStatsReporter();
+            com.uber.jaeger.Tracer tracer = JaegerOpenTracing.createTracer(agent, getJaegerConf().getServiceName(),
+                    statsReporter);
+            List<QESpan> spansExpected = new ArrayList<QESpan>();
+            ReplayResult result;
+            try (SpanReplayer replayer = new SpanReplayer(file)) {
+                result = replayer.replay(new QETracer(tracer), SpanReplayer.MAX_SPEED,
+                        span -> spansExpected.add((QESpan) span));
+            } finally {
+                //Flushes the spans still queued
+                tracer.close();
+            }
+            assertEquals(result.getReplayed().longValue(), SPANS);
+            assertEquals(result.getMissingReferences().longValue(), 0L);
+            assertEquals(statsReporter.snapshot().getSpansLost(), 0L, "Client lost spans");
+            assertEquals(shapes(spansExpected), shapes(spansRecorded), "Replay differs from the recording");
+
+            Criteria criteria = Criteria.builder().operation(conf.getOperation())
+                    .start(start).build();
+            List<QESpan> spans = server().waitForSpans(criteria, SPANS);
+            TraceDiff diff = TraceDiff.compare(spansExpected, spans);
+            assertTrue(diff.isEmpty(), diff.toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    //Spans by operation, tags, parent operation and depth, and number of FOLLOWS_FROM references
+    private static Map<String, Long> shapes(List<QESpan> spans) {
+        return spans.stream().collect(Collectors.groupingBy(SpanReplayTest::shape, TreeMap::new,
+                Collectors.counting()));
+    }
+
+    private static String shape(QESpan span) {
+        QESpan parent = span.getParent();
+        return span.getOperation() + " " + new TreeMap<String, Object>(span.getTags())
+                + " parent " + (parent == null ? null : parent.getOperation() + " " + parent.getTags().get("depth"))
+                + " follows from " + span.getFollowsFrom().size();
+    }
+
+    @Test
+    public void appendAfterTruncatedRecordTest() throws Exception {
+        TopologyConf conf = TopologyConf.builder()
+                .operation(uniqueOperation("truncated"))
+                .depth(2)
+                .fanOut(4)
+                .seed(1L)
+                .build();
+        Path file = Files.createTempFile("spans", ".qesr");
+        try {
+            com.uber.jaeger.Tracer recordingTracer = new com.uber.jaeger.Tracer.Builder(
+                    getJaegerConf().getServiceName(), new InMemoryReporter(), new ConstSampler(true)).build();
+            long firstSession;
+            try (SpanRecorder recorder = new SpanRecorder(file)) {
+                new TraceTopologyGenerator(new QETracer(recordingTracer, recorder), conf).generate();
+                firstSession = recorder.getRecorded();
+            }
+            //A recorder killed in the middle of the last span
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - 3);
+            }
+            long secondSession;
+            try (SpanRecorder recorder = new SpanRecorder(file)) {
+                new TraceTopologyGenerator(new QETracer(recordingTracer, recorder), conf).generate();
+                secondSession = recorder.getRecorded();
+            }
+
+            try (SpanReplayer replayer = new SpanReplayer(file)) {
+                assertEquals(replayer.size(), firstSession - 1 + secondSession);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
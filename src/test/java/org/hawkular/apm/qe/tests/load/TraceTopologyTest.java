@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.load;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.hawkular.apm.qe.load.TopologyConf;
+import org.hawkular.apm.qe.load.TraceTopologyGenerator;
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.QETracer;
+import org.hawkular.apm.qe.model.TraceDiff;
+import org.hawkular.apm.qe.model.conf.JaegerAgentConf;
+import org.hawkular.apm.qe.tests.TestBase;
+import org.hawkular.apm.qe.tracer.ConcurrentStatsReporter;
+import org.hawkular.apm.qe.tracer.JaegerOpenTracing;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.uber.jaeger.rest.model.Criteria;
+
+/**
+ * Sends single traces of different shapes, up to 10k spans, and checks the server assembles them as sent.
+ *
+ * @author kearls
+ */
+public class TraceTopologyTest extends TestBase {
+
+    //Name, depth, fan-out, follows from ratio and span count
+    @DataProvider(name = "topologies")
+    public Object[][] topologies() {
+        return new Object[][] {
+                { "wide", 1, 1000, 0.0, 1001 },
+                { "deep", 500, 1, 0.0, 501 },
+                { "async", 4, 4, 0.3, 341 },
+                { "large", 4, 10, 0.1, 10000 }
+        };
+    }
+
+    @Test(dataProvider = "topologies")
+    public void traceTopologyTest(String name, int depth, int fanOut, double followsFromRatio, int maxSpans)
+            throws Exception {
+        TopologyConf conf = TopologyConf.builder()
+                .operation(uniqueOperation("topology-" + name))
+                .depth(depth)
+                .fanOut(fanOut)
+                .followsFromRatio(followsFromRatio)
+                .maxSpans(maxSpans)
+                .seed(1L)
+                .build();
+        //Queue for the whole trace, so that none of it is dropped
+        JaegerAgentConf agent = getJaegerConf().getAgent().toBuilder()
+                .queueSize(maxSpans * 2)
+                .build();
+        long start = System.currentTimeMillis();
+
+        ConcurrentStatsReporter statsReporter = new ConcurrentStatsReporter();
+        com.uber.jaeger.Tracer tracer = JaegerOpenTracing.createTracer(agent, getJaegerConf().getServiceName(),
+                statsReporter);
+        List<QESpan> spansExpected;
+        try {
+            spansExpected = new TraceTopologyGenerator(new QETracer(tracer), conf).generate();
+        } finally {
+            //Flushes the spans still queued
+            tracer.close();
+        }
+        assertEquals(spansExpected.size(), maxSpans);
+        assertEquals(statsReporter.snapshot().getSpansLost(), 0L, "Client lost spans");
+
+        Criteria criteria = Criteria.builder().operation(conf.getOperation()).start(start).build();
+        List<QESpan> spans = server().waitForSpans(criteria, spansExpected.size());
+        TraceDiff diff = TraceDiff.compare(spansExpected, spans);
+        assertTrue(diff.isEmpty(), diff.toString());
+    }
+}
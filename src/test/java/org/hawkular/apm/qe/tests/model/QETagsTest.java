@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.model;
+
+import static org.testng.Assert.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hawkular.apm.qe.model.QETags;
+import org.hawkular.apm.qe.tests.TestBase;
+import org.testng.annotations.Test;
+
+import io.opentracing.Span;
+
+/**
+ * Checks that tags set again are replaced in place, whatever the type of the old and new values.
+ *
+ * @author kearls
+ */
+public class QETagsTest extends TestBase {
+
+    @Test
+    public void replaceInPlaceTest() {
+        QETags tags = new QETags()
+                .put("http.status_code", 200L)
+                .put("error", false)
+                .put("component", "qe");
+        for (int index = 0; index < 1000; index++) {
+            tags.put("http.status_code", index);
+        }
+        tags.put("error", "yes");
+        tags.put("component", 1.5);
+        assertEquals(tags.size(), 3);
+        assertEquals(tags.getName(0), "http.status_code");
+        assertEquals(tags.get("http.status_code"), 999L);
+        assertEquals(tags.get("error"), "yes");
+        assertEquals(tags.get("component"), 1.5);
+
+        //Each name set once on the span, with its last value
+        List<String> set = new ArrayList<String>();
+        Span span = (Span) Proxy.newProxyInstance(Span.class.getClassLoader(), new Class<?>[] { Span.class },
+                (proxy, method, args) -> {
+                    set.add(args[0] + "=" + args[1]);
+                    return proxy;
+                });
+        tags.applyTo(span);
+        assertEquals(set.toString(), "[http.status_code=999, error=yes, component=1.5]");
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.model;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.QESpanBuilder;
+import org.hawkular.apm.qe.model.SpanMatcher;
+import org.hawkular.apm.qe.tests.TestBase;
+import org.testng.annotations.Test;
+
+/**
+ * Offline checks of {@link SpanMatcher}, with the spans built by hand instead of read from a server.
+ *
+ * @author kearls
+ */
+public class SpanMatcherTest extends TestBase {
+    private static final long START = 1500000000000000L;
+
+    private QESpan span(String operation, long duration) {
+        QESpan span = ((QESpanBuilder) QESpanBuilder.offlineBuilder(operation).withStartTimestamp(START)).build();
+        span.finish(START + duration);
+        return span;
+    }
+
+    @Test
+    public void tagOrderTest() {
+        QESpan expected = span("order", 10);
+        expected.setTag("first", "a");
+        expected.setTag("second", 2L);
+        QESpan actual = span("order", 10);
+        actual.setTag("second", 2L);
+        actual.setTag("first", "a");
+
+        assertEquals(actual.fingerprint(), expected.fingerprint());
+        assertNotNull(new SpanMatcher(Collections.singletonList(actual)).find(expected));
+    }
+
+    @Test
+    public void ignoredTagsTest() {
+        QESpan expected = span("ignored", 10);
+        expected.setTag("component", "qe");
+        QESpan actual = span("ignored", 10);
+        actual.setTag("component", "qe");
+        actual.setTag("jaeger.version", "Java-0.17.0");
+        actual.setTag("sampler.type", "const");
+
+        assertEquals(actual.fingerprint(), expected.fingerprint());
+        assertNotNull(new SpanMatcher(Collections.singletonList(actual)).find(expected));
+    }
+
+    @Test
+    public void canonicalValueTest() {
+        QESpan expected = span("canonical", 10);
+        expected.setTag("http.status_code", 200L);
+        expected.setTag("error", true);
+        QESpan actual = span("canonical", 10);
+        actual.setTag("http.status_code", "200");
+        actual.setTag("error", "true");
+
+        assertEquals(actual.fingerprint(), expected.fingerprint());
+        assertNotNull(new SpanMatcher(Collections.singletonList(actual)).find(expected));
+
+        QESpan other = span("canonical", 10);
+        other.setTag("http.status_code", "500");
+        other.setTag("error", "true");
+        assertNull(new SpanMatcher(Collections.singletonList(other)).find(expected));
+    }
+
+    @Test
+    public void duplicatesTest() {
+        List<QESpan> expected = Arrays.asList(span("duplicate", 10), span("duplicate", 10));
+
+        List<QESpan> missing = new SpanMatcher(Collections.singletonList(span("duplicate", 10))).missing(expected);
+        assertEquals(missing.size(), 1);
+        assertTrue(new SpanMatcher(Arrays.asList(span("duplicate", 10), span("duplicate", 10)))
+                .missing(expected).isEmpty());
+    }
+
+    @Test
+    public void extraActualTagsTest() {
+        QESpan fewer = span("extra", 10);
+        fewer.setTag("a", "1");
+        QESpan more = span("extra", 10);
+        more.setTag("a", "1");
+        more.setTag("b", "2");
+        QESpan actualB = span("extra", 10);
+        actualB.setTag("a", "1");
+        actualB.setTag("b", "2");
+        QESpan actualC = span("extra", 10);
+        actualC.setTag("a", "1");
+        actualC.setTag("c", "3");
+
+        assertNotNull(new SpanMatcher(Collections.singletonList(actualC)).find(fewer));
+        assertNull(new SpanMatcher(Collections.singletonList(actualC)).find(more));
+        //The span with fewer tags comes first, it must not use up the only span equal to the other
+        assertTrue(new SpanMatcher(Arrays.asList(actualB, actualC)).missing(Arrays.asList(fewer, more)).isEmpty());
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.model;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.QESpanBuilder;
+import org.hawkular.apm.qe.model.TraceDiff;
+import org.hawkular.apm.qe.tests.TestBase;
+import org.testng.annotations.Test;
+
+/**
+ * Offline checks of {@link TraceDiff}, on traces built by hand: a root with two children of two children each,
+ * spans 1 to 7, and a long chain.
+ *
+ * @author kearls
+ */
+public class TraceDiffTest extends TestBase {
+    private static final long START = 1500000000000000L;
+    private static final int CHAIN_DEPTH = 10000;
+
+    private QESpan span(List<QESpan> trace, int id, QESpan parent) {
+        QESpanBuilder builder = QESpanBuilder.offlineBuilder("span" + id).asChildOf(parent);
+        QESpan span = ((QESpanBuilder) builder.withStartTimestamp(START + id)).build();
+        span.setSpanId(Integer.toHexString(id));
+        span.setTag("depth", (long) trace.size());
+        span.finish(START + id + 10);
+        trace.add(span);
+        return span;
+    }
+
+    //Spans 1 to 7, 2 and 3 children of 1, 4 and 5 of 2, 6 and 7 of 3
+    private List<QESpan> trace() {
+        List<QESpan> trace = new ArrayList<QESpan>();
+        QESpan root = span(trace, 1, null);
+        QESpan left = span(trace, 2, root);
+        QESpan right = span(trace, 3, root);
+        span(trace, 4, left);
+        span(trace, 5, left);
+        span(trace, 6, right);
+        span(trace, 7, right);
+        return trace;
+    }
+
+    private List<QESpan> chain(int depth) {
+        List<QESpan> chain = new ArrayList<QESpan>(depth);
+        QESpan parent = null;
+        for (int id = 1; id <= depth; id++) {
+            parent = span(chain, id, parent);
+        }
+        return chain;
+    }
+
+    @Test
+    public void identicalTest() {
+        TraceDiff diff = TraceDiff.compare(trace(), trace());
+        assertTrue(diff.isEmpty(), diff.toString());
+    }
+
+    @Test
+    public void missingTest() {
+        List<QESpan> expected = trace();
+        List<QESpan> actual = trace();
+        actual.remove(6);
+
+        TraceDiff diff = TraceDiff.compare(expected, actual);
+        assertEquals(diff.getMissing().size(), 1, diff.toString());
+        assertSame(diff.getMissing().get(0), expected.get(6));
+        assertTrue(diff.getExtra().isEmpty() && diff.getReparented().isEmpty() && diff.getMismatched().isEmpty(),
+                diff.toString());
+    }
+
+    @Test
+    public void extraTest() {
+        List<QESpan> expected = trace();
+        List<QESpan> actual = trace();
+        QESpan added = span(actual, 8, actual.get(6));
+
+        TraceDiff diff = TraceDiff.compare(expected, actual);
+        assertEquals(diff.getExtra().size(), 1, diff.toString());
+        assertSame(diff.getExtra().get(0), added);
+        assertTrue(diff.getMissing().isEmpty() && diff.getReparented().isEmpty() && diff.getMismatched().isEmpty(),
+                diff.toString());
+    }
+
+    @Test
+    public void reparentedTest() {
+        List<QESpan> expected = trace();
+        List<QESpan> actual = trace();
+        //Span 5 under 3 instead of 2
+        actual.get(4).setParent(actual.get(2));
+
+        TraceDiff diff = TraceDiff.compare(expected, actual);
+        assertEquals(diff.getReparented().size(), 1, diff.toString());
+        assertSame(diff.getReparented().get(0).getExpected(), expected.get(4));
+        assertSame(diff.getReparented().get(0).getActual(), actual.get(4));
+        assertTrue(diff.getMissing().isEmpty() && diff.getExtra().isEmpty() && diff.getMismatched().isEmpty(),
+                diff.toString());
+    }
+
+    @Test
+    public void mismatchedTest() {
+        List<QESpan> expected = trace();
+        List<QESpan> actual = trace();
+        actual.get(3).setTag("depth", -1L);
+
+        TraceDiff diff = TraceDiff.compare(expected, actual);
+        assertEquals(diff.getMismatched().size(), 1, diff.toString());
+        assertSame(diff.getMismatched().get(0).getExpected(), expected.get(3));
+        assertSame(diff.getMismatched().get(0).getActual(), actual.get(3));
+        assertTrue(diff.getMissing().isEmpty() && diff.getExtra().isEmpty() && diff.getReparented().isEmpty(),
+                diff.toString());
+    }
+
+    @Test
+    public void deepChainTest() {
+        TraceDiff diff = TraceDiff.compare(chain(CHAIN_DEPTH), chain(CHAIN_DEPTH));
+        assertTrue(diff.isEmpty(), diff.toString());
+
+        //The walk goes down the whole chain to the changed span
+        List<QESpan> expected = chain(CHAIN_DEPTH);
+        List<QESpan> actual = chain(CHAIN_DEPTH);
+        actual.get(CHAIN_DEPTH - 1).setTag("depth", -1L);
+        diff = TraceDiff.compare(expected, actual);
+        assertEquals(diff.getMismatched().size(), 1, diff.toString());
+        assertSame(diff.getMismatched().get(0).getActual(), actual.get(CHAIN_DEPTH - 1));
+        assertTrue(diff.getMissing().isEmpty() && diff.getExtra().isEmpty() && diff.getReparented().isEmpty(),
+                diff.toString());
+    }
+}
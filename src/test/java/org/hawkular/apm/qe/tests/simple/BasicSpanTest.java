@@ -20,10 +20,15 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.SpanMatcher;
+import org.hawkular.apm.qe.tests.JaegerRestApiWrapper;
 import org.hawkular.apm.qe.tests.TestBase;
+import org.hawkular.apm.qe.tests.TtlCache;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.uber.jaeger.rest.model.Criteria;
+
 import io.opentracing.Span;
 
 /**
@@ -41,7 +46,7 @@ public class BasicSpanTest extends TestBase {
          */
         long end = System.currentTimeMillis() * 1000L; // in microseconds
         long start = end - randomLong(100L * 1000L);
-        String operation = "rootSpanTest_" + randomInt(0, 100);
+        String operation = uniqueOperation("rootSpanTest");
         List<QESpan> spansExpected = new ArrayList<QESpan>();
         Span parentSpan = qeTracer().buildSpan(operation)
                 .withStartTimestamp(start)
@@ -52,23 +57,13 @@ public class BasicSpanTest extends TestBase {
         spansExpected.add((QESpan) parentSpan);
         parentSpan.finish(end);
 
-        //Give some delay to settle down spans to server
-        sleep();
-
-        //Validate span on server
-        List<QESpan> spansActual = server().listSpan(operation, start / 1000, end / 1000);
+        //Wait until the spans are visible on server
+        Criteria criteria = Criteria.builder().operation(operation).start(start / 1000).end(end / 1000).build();
+        List<QESpan> spansActual = server().waitForSpans(criteria, spansExpected);
         Assert.assertEquals(spansActual.size(), spansExpected.size());
         //Validate span on server
-        for (QESpan spanExpected : spansExpected) {
-            boolean found = false;
-            for (int index = 0; index < spansActual.size(); index++) {
-                if (spanExpected.equals(spansActual.get(index))) {
-                    found = true;
-                    break;
-                }
-            }
-            Assert.assertTrue(found, "Not found: " + spanExpected.toString());
-        }
+        List<QESpan> spansMissing = new SpanMatcher(spansActual).missing(spansExpected);
+        Assert.assertTrue(spansMissing.isEmpty(), "Not found: " + spansMissing);
 
     }
 
@@ -83,7 +78,7 @@ public class BasicSpanTest extends TestBase {
          */
         long end = System.currentTimeMillis() * 1000L; // in microseconds
         long start = end - randomLong(100L * 1000L);
-        String operation = "basicSpanTestWithSingleChild_" + randomInt(0, 100);
+        String operation = uniqueOperation("basicSpanTestWithSingleChild");
         List<QESpan> spansExpected = new ArrayList<QESpan>();
         Span parentSpan = qeTracer().buildSpan(operation)
                 .withStartTimestamp(start)
@@ -103,22 +98,44 @@ public class BasicSpanTest extends TestBase {
         childSpan.finish(randomLong(start, end));
         parentSpan.finish(end);
 
-        //Give some delay to settle down spans to server
-        sleep();
-
-        //Validate span on server
-        List<QESpan> spansActual = server().listSpan(operation, start / 1000, end / 1000);
+        //Wait until the spans are visible on server
+        Criteria criteria = Criteria.builder().operation(operation).start(start / 1000).end(end / 1000).build();
+        List<QESpan> spansActual = server().waitForSpans(criteria, spansExpected);
         Assert.assertEquals(spansActual.size(), spansExpected.size());
         //Validate span on server
-        for (QESpan spanExpected : spansExpected) {
-            boolean found = false;
-            for (int index = 0; index < spansActual.size(); index++) {
-                if (spanExpected.equals(spansActual.get(index))) {
-                    found = true;
-                    break;
-                }
-            }
-            Assert.assertTrue(found, "Not found: " + spanExpected.toString());
+        List<QESpan> spansMissing = new SpanMatcher(spansActual).missing(spansExpected);
+        Assert.assertTrue(spansMissing.isEmpty(), "Not found: " + spansMissing);
+    }
+
+    @Test(priority = 2)
+    public void servicesAndOperationsTest() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        String operation = uniqueOperation("servicesAndOperationsTest");
+        Span span = qeTracer().buildSpan(operation).start();
+        span.finish();
+
+        Criteria criteria = Criteria.builder().operation(operation).start(start).build();
+        Assert.assertEquals(server().waitForTraceCount(criteria, 1), 1, "Expected 1 trace");
+        //The operation is new, cached lists may not have it yet
+        server().invalidateMetadata();
+        String service = getJaegerConf().getServiceName();
+        Assert.assertTrue(server().listServices().contains(service), "Service not listed: " + service);
+        Assert.assertTrue(server().listOperations(service).contains(operation), "Operation not listed: " + operation);
+
+        if (server() instanceof JaegerRestApiWrapper) {
+            //Read twice, loaded once, and loaded again once invalidated
+            TtlCache<String, List<String>> cache = ((JaegerRestApiWrapper) server()).getMetadataCache();
+            server().invalidateMetadata();
+            long hits = cache.getHits();
+            long misses = cache.getMisses();
+            server().listServices();
+            server().listServices();
+            Assert.assertEquals(cache.getMisses(), misses + 1, cache.toString());
+            Assert.assertEquals(cache.getHits(), hits + 1, cache.toString());
+            server().invalidateMetadata();
+            server().listServices();
+            Assert.assertEquals(cache.getMisses(), misses + 2, cache.toString());
+            Assert.assertEquals(cache.getHits(), hits + 1, cache.toString());
         }
     }
 }
@@ -25,12 +25,11 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.TraceDiff;
 import org.hawkular.apm.qe.tests.TestBase;
 import org.testng.Assert;
-import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.uber.jaeger.rest.model.Criteria;
@@ -42,18 +41,6 @@ import io.opentracing.Span;
  *
  */
 public class FirstJaegerTest extends TestBase {
-    AtomicInteger operationId = new AtomicInteger(0);
-    List<QESpan> spansExpected = new ArrayList<QESpan>();
-
-    long startTime;
-
-    @BeforeMethod
-    public void beforeMethod() {
-        startTime = Instant.now().toEpochMilli();
-        operationId.incrementAndGet();
-        spansExpected.clear();
-    }
-
     /**
      * A simple test that just creates one span, and verifies that it was created correctly.
      *
@@ -61,17 +48,18 @@ public class FirstJaegerTest extends TestBase {
      */
     @Test
     public void writeASingleSpanTest() throws Exception {
-        String operationName = "writeASingleSpanTest" + operationId.getAndIncrement();
+        long startTime = Instant.now().toEpochMilli();
+        List<QESpan> spansExpected = new ArrayList<QESpan>();
+        String operationName = uniqueOperation("writeASingleSpanTest");
         Span span = qeTracer().buildSpan(operationName)
                 .withTag("simple", true)
                 .start();
         spansExpected.add((QESpan) span);
         span.finish();
-        sleep();
         Criteria criteria = Criteria.builder().operation(operationName).start(startTime).build();
-        assertEquals(server().traceCount(criteria), 1, "Expected 1 trace");
+        assertEquals(server().waitForTraceCount(criteria, 1), 1, "Expected 1 trace");
 
-        List<QESpan> spans = server().listSpan(criteria);
+        List<QESpan> spans = server().waitForSpans(criteria, spansExpected.size());
         assertEquals(spans.size(), 1, "Expected 1 span");
         QESpan qeSpan = spans.get(0);
         assertEquals(qeSpan.getOperation(), operationName);
@@ -89,7 +77,9 @@ public class FirstJaegerTest extends TestBase {
      */
     @Test
     public void spanWithChildrenTest() throws Exception {
-        String operationName = "spanWithChildrenTest" + operationId.getAndIncrement();
+        long startTime = Instant.now().toEpochMilli();
+        List<QESpan> spansExpected = new ArrayList<QESpan>();
+        String operationName = uniqueOperation("spanWithChildrenTest");
         Span parentSpan = qeTracer().buildSpan(operationName)
                 .withTag("simple", true)
                 .start();
@@ -114,14 +104,13 @@ public class FirstJaegerTest extends TestBase {
 
         parentSpan.finish();
 
-        sleep();
-
         Criteria criteria = Criteria.builder().operation(operationName).start(startTime).build();
-        assertEquals(server().traceCount(criteria), 1, "Expected 1 trace");
+        assertEquals(server().waitForTraceCount(criteria, 1), 1, "Expected 1 trace");
 
-        List<QESpan> spans = server().listSpan(criteria);
+        List<QESpan> spans = server().waitForSpans(criteria, spansExpected.size());
         assertEquals(spans.size(), spansExpected.size());
-        // TODO validate parent child structure, operationNames, etc.
+        TraceDiff diff = TraceDiff.compare(spansExpected, spans);
+        assertTrue(diff.isEmpty(), diff.toString());
     }
 
     /**
@@ -131,7 +120,9 @@ public class FirstJaegerTest extends TestBase {
      */
     @Test
     public void testStartEndTest() throws Exception {
-        String operationName = "startEndTest" + operationId.getAndIncrement();
+        long startTime = Instant.now().toEpochMilli();
+        List<QESpan> spansExpected = new ArrayList<QESpan>();
+        String operationName = uniqueOperation("startEndTest");
         long end = 0;
         for (int i = 0; i < 5; i++) {
             if (i == 3) {
@@ -147,9 +138,9 @@ public class FirstJaegerTest extends TestBase {
             testSpan.finish();
         }
 
-        sleep();
-        Criteria criteria = Criteria.builder().start(startTime).end(end).build();
-        assertEquals(server().traceCount(criteria), spansExpected.size(), "Expected 3 traces");
+        Criteria criteria = Criteria.builder().operation(operationName).start(startTime).end(end).build();
+        assertEquals(server().waitForTraceCount(criteria, spansExpected.size()), spansExpected.size(),
+                "Expected 3 traces");
         // TODO more assertions here ?
     }
 
@@ -161,26 +152,28 @@ public class FirstJaegerTest extends TestBase {
      */
     @Test
     public void successiveSpansTest() throws Exception {
-        String operationName = "successiveSpansTest" + operationId.getAndIncrement();
-        Span firstSpan = qeTracer().buildSpan(operationName)
+        long startTime = Instant.now().toEpochMilli();
+        List<QESpan> spansExpected = new ArrayList<QESpan>();
+        String firstOperationName = uniqueOperation("successiveSpansTest");
+        Span firstSpan = qeTracer().buildSpan(firstOperationName)
                 .withTag("firstSpan", true)
                 .start();
         spansExpected.add((QESpan) firstSpan);
         Thread.sleep(50);
         firstSpan.finish();
 
-        operationName = "successiveSpansTest" + operationId.getAndIncrement();
-        Span secondSpan = qeTracer().buildSpan(operationName)
+        String secondOperationName = uniqueOperation("successiveSpansTest");
+        Span secondSpan = qeTracer().buildSpan(secondOperationName)
                 .withTag("secondSpan", true)
                 .start();
         spansExpected.add((QESpan) secondSpan);
         Thread.sleep(75);
         secondSpan.finish();
 
-        sleep();
-
-        Criteria criteria = Criteria.builder().start(startTime).build();
-        assertEquals(server().traceCount(criteria), spansExpected.size(), "Expected 2 traces");
+        Criteria firstCriteria = Criteria.builder().operation(firstOperationName).start(startTime).build();
+        Criteria secondCriteria = Criteria.builder().operation(secondOperationName).start(startTime).build();
+        assertEquals(server().waitForTraceCount(firstCriteria, 1) + server().waitForTraceCount(secondCriteria, 1),
+                spansExpected.size(), "Expected 2 traces");
 
         // TODO more assertions here....
         //dumpAllTraces(traces);
@@ -209,7 +202,9 @@ public class FirstJaegerTest extends TestBase {
      */
     @Test(enabled = false)
     public void tagsShouldBeTypedTest() throws Exception {
-        String operationName = "tagsShouldBeTypedTest";
+        long startTime = Instant.now().toEpochMilli();
+        List<QESpan> spansExpected = new ArrayList<QESpan>();
+        String operationName = uniqueOperation("tagsShouldBeTypedTest");
         Span span = qeTracer().buildSpan(operationName)
                 .withTag("booleanTag", true)
                 .withTag("numberTag", 42)
@@ -217,12 +212,11 @@ public class FirstJaegerTest extends TestBase {
                 .start();
         spansExpected.add((QESpan) span);
         span.finish();
-        sleep();
 
-        Criteria criteria = Criteria.builder().start(startTime).build();
+        Criteria criteria = Criteria.builder().operation(operationName).start(startTime).build();
 
-        assertEquals(server().traceCount(criteria), 1, "Expected 1 trace");
-        List<QESpan> spans = server().listSpan(criteria);
+        assertEquals(server().waitForTraceCount(criteria, 1), 1, "Expected 1 trace");
+        List<QESpan> spans = server().waitForSpans(criteria, spansExpected.size());
         assertEquals(1, spans.size(), "Expected only 1 span");
         QESpan qeSpan = spans.get(0);
 
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.simple;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.conf.JaegerAgentConf;
+import org.hawkular.apm.qe.tests.TestBase;
+import org.hawkular.apm.qe.tracer.ConcurrentStatsReporter;
+import org.hawkular.apm.qe.tracer.FlushResult;
+import org.hawkular.apm.qe.tracer.FlushableReporter;
+import org.hawkular.apm.qe.tracer.JaegerOpenTracing;
+import org.hawkular.apm.qe.tracer.MetricsSnapshot;
+import org.testng.annotations.Test;
+
+import com.uber.jaeger.metrics.Metrics;
+import com.uber.jaeger.metrics.StatsFactoryImpl;
+import com.uber.jaeger.rest.model.Criteria;
+import com.uber.jaeger.samplers.ConstSampler;
+import com.uber.jaeger.senders.Sender;
+
+/**
+ * Checks spans are sent by an explicit flush, without the flush timer, and that a closed tracer drops spans.
+ *
+ * @author kearls
+ */
+public class FlushTest extends TestBase {
+    private static final int SPANS = 20;
+    private static final int CLOSE_ROUNDS = 200;
+    private static final int REPORTING_THREADS = 4;
+
+    @Test
+    public void flushAndCloseTest() {
+        //The flush timer does not fire within the test
+        JaegerAgentConf agent = getJaegerConf().getAgent().toBuilder()
+                .flushInterval(3600000)
+                .queueSize(SPANS * 2)
+                .build();
+        ConcurrentStatsReporter statsReporter = new ConcurrentStatsReporter();
+        FlushableReporter reporter = JaegerOpenTracing.createReporter(agent, statsReporter);
+        com.uber.jaeger.Tracer tracer = JaegerOpenTracing.createTracer(agent, getJaegerConf().getServiceName(),
+                statsReporter, reporter);
+        String operation = uniqueOperation("flush");
+        long start = System.currentTimeMillis();
+        for (int index = 0; index < SPANS; index++) {
+            tracer.buildSpan(operation).withTag("index", index).start().finish();
+        }
+
+        FlushResult flushed = reporter.flush(agent.getFlushTimeout());
+        assertTrue(flushed.getComplete(), flushed.toString());
+        assertEquals(flushed.getDrained().longValue(), SPANS);
+        MetricsSnapshot metrics = statsReporter.snapshot();
+        assertEquals(metrics.getSpansReported(), SPANS);
+        assertEquals(metrics.getFlushes(), 1L);
+        assertEquals(metrics.getSpansDrained(), SPANS);
+
+        //Nothing left to send on close, and nothing sent after
+        FlushResult closed = reporter.close(agent.getFlushTimeout());
+        assertTrue(closed.getComplete(), closed.toString());
+        assertEquals(closed.getDrained().longValue(), 0L);
+        tracer.buildSpan(operation).start().finish();
+        assertEquals(statsReporter.snapshot().getSpansDropped(), 1L);
+
+        Criteria criteria = Criteria.builder().operation(operation).start(start).build();
+        List<QESpan> spans = server().waitForSpans(criteria, SPANS);
+        assertEquals(spans.size(), SPANS);
+    }
+
+    @Test
+    public void closeWhileReportingTest() throws Exception {
+        for (int round = 0; round < CLOSE_ROUNDS; round++) {
+            ConcurrentStatsReporter statsReporter = new ConcurrentStatsReporter();
+            FlushableReporter reporter = new FlushableReporter(new CountingSender(), 3600000, 100000, 10000,
+                    new Metrics(new StatsFactoryImpl(statsReporter)), statsReporter);
+            com.uber.jaeger.Tracer tracer = new com.uber.jaeger.Tracer.Builder(getJaegerConf().getServiceName(),
+                    reporter, new ConstSampler(true)).withStatsReporter(statsReporter).build();
+            CountDownLatch started = new CountDownLatch(REPORTING_THREADS);
+            AtomicBoolean stop = new AtomicBoolean();
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int thread = 0; thread < REPORTING_THREADS; thread++) {
+                threads.add(new Thread(() -> {
+                    started.countDown();
+                    //Until after the close
+                    while (!stop.get()) {
+                        tracer.buildSpan("closing").start().finish();
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            started.await();
+            reporter.close(10000);
+            stop.set(true);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            //Each span finished is sent or counted as dropped, also when reported as the reporter closed
+            MetricsSnapshot metrics = statsReporter.snapshot();
+            assertEquals(metrics.getSpansReported() + metrics.getSpansDropped(), metrics.getSpansFinished(),
+                    "Round " + round + ": " + metrics);
+        }
+    }
+
+    //Sends on flush the spans appended since the previous one
+    private static class CountingSender implements Sender {
+        private int pending = 0;
+
+        @Override
+        public int append(com.twitter.zipkin.thriftjava.Span span) {
+            pending++;
+            return 0;
+        }
+
+        @Override
+        public int flush() {
+            int flushed = pending;
+            pending = 0;
+            return flushed;
+        }
+
+        @Override
+        public int close() {
+            return flush();
+        }
+    }
+}
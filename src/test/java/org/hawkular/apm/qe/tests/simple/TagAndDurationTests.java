@@ -23,11 +23,9 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.hawkular.apm.qe.model.QESpan;
 import org.hawkular.apm.qe.tests.TestBase;
-import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.uber.jaeger.rest.model.Criteria;
@@ -38,34 +36,24 @@ import io.opentracing.Span;
  * Created by Kevin Earls on 04 April 2017.
  */
 public class TagAndDurationTests extends TestBase {
-    AtomicLong operationId = new AtomicLong(Instant.now().getEpochSecond());
-    long startTime;
-    List<QESpan> spansExpected = new ArrayList<QESpan>();
-
-    @BeforeMethod
-    public void beforeMethod() {
-        startTime = Instant.now().toEpochMilli();
-        operationId.incrementAndGet();
-        spansExpected.clear();
-    }
-
     /**
      * Write a single span with one tag, and verify that the correct tag is returned
      */
     @Test
     public void simpleTagTest() throws Exception {
-        String operationName = "simpleTagTest-" + operationId.getAndIncrement();
+        long startTime = Instant.now().toEpochMilli();
+        List<QESpan> spansExpected = new ArrayList<QESpan>();
+        String operationName = uniqueOperation("simpleTagTest");
         Span span = qeTracer().buildSpan(operationName)
                 .withTag("simple", true)
                 .start();
         spansExpected.add((QESpan) span);
         span.finish();
-        sleep();
 
         Criteria criteria = Criteria.builder().operation(operationName).start(startTime).build();
-        assertEquals(server().traceCount(criteria), 1, "Expected 1 trace");
+        assertEquals(server().waitForTraceCount(criteria, 1), 1, "Expected 1 trace");
 
-        List<QESpan> spans = server().listSpan(criteria);
+        List<QESpan> spans = server().waitForSpans(criteria, spansExpected.size());
         assertEquals(spans.size(), spansExpected.size(), "Recieved spans: " + spans);
         QESpan receivedSpan = spans.get(0);
 
@@ -83,7 +71,9 @@ public class TagAndDurationTests extends TestBase {
      */
     @Test
     public void simpleDurationTest() throws Exception {
-        String operationName = "simpleDurationTest-" + operationId.getAndIncrement();
+        long startTime = Instant.now().toEpochMilli();
+        List<QESpan> spansExpected = new ArrayList<QESpan>();
+        String operationName = uniqueOperation("simpleDurationTest");
         Span span = qeTracer().buildSpan(operationName)
                 .withTag("simple", true)
                 .start();
@@ -91,12 +81,11 @@ public class TagAndDurationTests extends TestBase {
         long expectedMinimumDuration = 100;
         sleep(expectedMinimumDuration);
         span.finish();
-        sleep();
 
         Criteria criteria = Criteria.builder().operation(operationName).start(startTime).build();
-        assertEquals(server().traceCount(criteria), 1, "Expected 1 trace");
+        assertEquals(server().waitForTraceCount(criteria, 1), 1, "Expected 1 trace");
 
-        List<QESpan> spans = server().listSpan(criteria);
+        List<QESpan> spans = server().waitForSpans(criteria, spansExpected.size());
         assertEquals(spans.size(), spansExpected.size(), "Expected 1 span");
         QESpan receivedSpan = spans.get(0);
 
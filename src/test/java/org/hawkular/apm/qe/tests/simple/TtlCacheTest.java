@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.simple;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.hawkular.apm.qe.tests.TestBase;
+import org.hawkular.apm.qe.tests.TtlCache;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the hits and misses of {@link TtlCache} through expiry, invalidation, failed and concurrent loads.
+ *
+ * @author kearls
+ */
+public class TtlCacheTest extends TestBase {
+    private static final long TTL = 200L;
+
+    @Test
+    public void hitsAndMissesTest() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        TtlCache<String, String> cache = new TtlCache<String, String>(key -> key + loads.incrementAndGet(), TTL);
+        assertEquals(cache.get("a"), "a1");
+        assertEquals(cache.get("a"), "a1");
+        assertEquals(cache.get("b"), "b2");
+        assertEquals(cache.getMisses(), 2L);
+        assertEquals(cache.getHits(), 1L);
+
+        cache.invalidate("a");
+        assertEquals(cache.get("a"), "a3");
+        assertEquals(cache.get("b"), "b2");
+        assertEquals(cache.getMisses(), 3L);
+        assertEquals(cache.getHits(), 2L);
+
+        cache.invalidateAll();
+        assertEquals(cache.get("b"), "b4");
+        assertEquals(cache.getMisses(), 4L);
+
+        Thread.sleep(TTL * 2);
+        assertEquals(cache.get("b"), "b5", "Not expired");
+        assertEquals(cache.getMisses(), 5L);
+        assertEquals(cache.getHits(), 2L);
+    }
+
+    @Test
+    public void failedLoadTest() {
+        AtomicInteger loads = new AtomicInteger();
+        TtlCache<String, String> cache = new TtlCache<String, String>(key -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException("Server down");
+            }
+            return key;
+        }, TTL);
+        try {
+            cache.get("a");
+            fail("Load did not fail");
+        } catch (IllegalStateException ex) {
+            //Not kept, the next get loads again
+        }
+        assertEquals(cache.get("a"), "a");
+        assertEquals(cache.getMisses(), 2L);
+    }
+
+    @Test
+    public void failedLoadWithErrorTest() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        TtlCache<String, String> cache = new TtlCache<String, String>(key -> {
+            if (loads.incrementAndGet() == 1) {
+                loading.countDown();
+                //Until the other thread waits for this load
+                sleep(TTL);
+                throw new AssertionError("Status 500");
+            }
+            return key;
+        }, TTL * 10);
+        AtomicReference<Throwable> waiterError = new AtomicReference<Throwable>();
+        Thread waiter = new Thread(() -> {
+            try {
+                loading.await();
+                cache.get("a");
+            } catch (Throwable ex) {
+                waiterError.set(ex);
+            }
+        });
+        waiter.start();
+        try {
+            cache.get("a");
+            fail("Load did not fail");
+        } catch (AssertionError ex) {
+            assertEquals(ex.getMessage(), "Status 500");
+        }
+        waiter.join(TTL * 10);
+        assertFalse(waiter.isAlive(), "Waiter blocked on the failed load");
+        //The waiter gets the error of the load it waited for, not a CompletionException
+        assertNotNull(waiterError.get(), "Waiter did not share the failed load");
+        assertEquals(waiterError.get().getClass(), AssertionError.class);
+        assertEquals(waiterError.get().getMessage(), "Status 500");
+        //Not kept
+        assertEquals(cache.get("a"), "a");
+        assertEquals(loads.get(), 2);
+    }
+
+    @Test
+    public void concurrentLoadTest() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        TtlCache<String, Integer> cache = new TtlCache<String, Integer>(key -> {
+            loading.countDown();
+            sleep(TTL / 4);
+            return loads.incrementAndGet();
+        }, TTL * 10);
+        List<Thread> threads = new ArrayList<Thread>();
+        List<Integer> values = new ArrayList<Integer>();
+        for (int thread = 0; thread < 4; thread++) {
+            threads.add(new Thread(() -> {
+                Integer value = cache.get("a");
+                synchronized (values) {
+                    values.add(value);
+                }
+            }));
+        }
+        threads.get(0).start();
+        loading.await();
+        //The others wait for the load under way
+        for (int thread = 1; thread < threads.size(); thread++) {
+            threads.get(thread).start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(loads.get(), 1);
+        assertEquals(values.toString(), "[1, 1, 1, 1]");
+        assertEquals(cache.getMisses(), 1L);
+        assertEquals(cache.getHits(), 3L);
+    }
+}
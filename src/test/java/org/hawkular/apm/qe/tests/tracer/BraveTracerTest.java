@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.tracer;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hawkular.apm.qe.model.QECarrier;
+import org.hawkular.apm.qe.tests.TestBase;
+import org.hawkular.apm.qe.tracer.BraveSpanContext;
+import org.hawkular.apm.qe.tracer.BraveTracer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brave.Tracing;
+import brave.propagation.TraceContext;
+import io.opentracing.References;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.propagation.Format;
+import io.opentracing.tag.Tags;
+import zipkin.Constants;
+
+/**
+ * Checks the OpenTracing adapter over Brave with the spans kept in memory: B3 propagation, baggage, span kinds and
+ * parents.
+ *
+ * @author kearls
+ */
+public class BraveTracerTest extends TestBase {
+    private final List<zipkin.Span> reported = new ArrayList<zipkin.Span>();
+    private BraveTracer tracer;
+
+    @BeforeMethod
+    public void createTracer() {
+        reported.clear();
+        tracer = new BraveTracer(Tracing.newBuilder()
+                .localServiceName(getJaegerConf().getServiceName())
+                .reporter(reported::add)
+                .build());
+    }
+
+    @AfterMethod
+    public void closeTracer() {
+        tracer.unwrap().close();
+    }
+
+    @Test
+    public void injectExtractTest() {
+        Span root = tracer.buildSpan("root").start();
+        root.setBaggageItem("user", "qe");
+        QECarrier carrier = new QECarrier();
+        tracer.inject(root.context(), Format.Builtin.HTTP_HEADERS, carrier);
+        assertNotNull(carrier.get("X-B3-TraceId"), carrier.toString());
+        assertEquals(carrier.get("baggage-user"), "qe");
+
+        SpanContext extracted = tracer.extract(Format.Builtin.HTTP_HEADERS, carrier);
+        TraceContext rootContext = ((BraveSpanContext) root.context()).unwrap();
+        TraceContext extractedContext = ((BraveSpanContext) extracted).unwrap();
+        assertEquals(extractedContext.traceId(), rootContext.traceId());
+        assertEquals(extractedContext.spanId(), rootContext.spanId());
+
+        Span child = tracer.buildSpan("child").asChildOf(extracted).start();
+        TraceContext childContext = ((BraveSpanContext) child.context()).unwrap();
+        assertEquals(childContext.traceId(), rootContext.traceId());
+        assertEquals(childContext.parentId().longValue(), rootContext.spanId());
+        assertEquals(child.getBaggageItem("user"), "qe");
+        //Baggage of the child is its own
+        child.setBaggageItem("user", "child");
+        assertEquals(root.getBaggageItem("user"), "qe");
+        child.finish();
+        root.finish();
+
+        assertEquals(reported.size(), 2);
+        assertEquals(reported.get(0).parentId.longValue(), reported.get(1).id);
+        assertEquals(reported.get(0).traceId, reported.get(1).traceId);
+    }
+
+    @Test
+    public void extractWithoutContextTest() {
+        QECarrier carrier = new QECarrier();
+        carrier.put("baggage-user", "qe");
+        assertNull(tracer.extract(Format.Builtin.TEXT_MAP, carrier));
+    }
+
+    @Test
+    public void spanKindTest() {
+        Span server = tracer.buildSpan("server").withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_SERVER).start();
+        server.setTag("depth", 1);
+        server.finish();
+
+        zipkin.Span span = reported.get(0);
+        assertTrue(span.annotations.stream().anyMatch(annotation -> Constants.SERVER_RECV.equals(annotation.value)),
+                span.toString());
+        assertFalse(span.binaryAnnotations.stream().anyMatch(tag -> Tags.SPAN_KIND.getKey().equals(tag.key)),
+                span.toString());
+        assertTrue(span.binaryAnnotations.stream().anyMatch(tag -> tag.key.equals("depth")), span.toString());
+    }
+
+    @Test
+    public void firstReferenceIsParentTest() {
+        Span first = tracer.buildSpan("first").start();
+        Span second = tracer.buildSpan("second").start();
+        Span span = tracer.buildSpan("span")
+                .addReference(References.FOLLOWS_FROM, first.context())
+                .asChildOf(second)
+                .start();
+        TraceContext context = ((BraveSpanContext) span.context()).unwrap();
+        assertEquals(context.parentId().longValue(), ((BraveSpanContext) first.context()).unwrap().spanId());
+        assertEquals(context.traceId(), ((BraveSpanContext) first.context()).unwrap().traceId());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.tracer;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Map;
+
+import org.hawkular.apm.qe.model.QECarrier;
+import org.hawkular.apm.qe.model.QESpan;
+import org.hawkular.apm.qe.model.QETracer;
+import org.hawkular.apm.qe.tests.TestBase;
+import org.testng.annotations.Test;
+
+import com.uber.jaeger.SpanContext;
+import com.uber.jaeger.reporters.InMemoryReporter;
+import com.uber.jaeger.samplers.ConstSampler;
+
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMap;
+
+/**
+ * Injects span contexts through {@link QETracer} into a {@link QECarrier} and extracts them back, in both text
+ * formats, with one carrier reused across the hops.
+ *
+ * @author kearls
+ */
+public class PropagationTest extends TestBase {
+
+    @Test
+    public void roundTripTest() {
+        QETracer tracer = new QETracer(new com.uber.jaeger.Tracer.Builder(getJaegerConf().getServiceName(),
+                new InMemoryReporter(), new ConstSampler(true)).build());
+        QECarrier carrier = new QECarrier();
+
+        QESpan root = (QESpan) tracer.buildSpan("root").start();
+        root.setBaggageItem("user", "qe");
+        roundTrip(tracer, carrier, Format.Builtin.TEXT_MAP, root);
+
+        //The carrier keeps none of the previous hop, with a child carrying more baggage
+        QESpan child = (QESpan) tracer.buildSpan("child").asChildOf(root).start();
+        child.setBaggageItem("request", "a b/c");
+        carrier.clear();
+        assertEquals(carrier.size(), 0);
+        assertNull(carrier.get("uber-trace-id"));
+        SpanContext extracted = roundTrip(tracer, carrier, Format.Builtin.HTTP_HEADERS, child);
+        assertEquals(extracted.getParentID(), ((SpanContext) root.context()).getSpanID());
+
+        carrier.clear();
+        QESpan other = (QESpan) tracer.buildSpan("other").start();
+        extracted = roundTrip(tracer, carrier, Format.Builtin.TEXT_MAP, other);
+        assertNull(extracted.getBaggageItem("user"), carrier.toString());
+        child.finish();
+        root.finish();
+        other.finish();
+    }
+
+    private static SpanContext roundTrip(QETracer tracer, QECarrier carrier, Format<TextMap> format,
+            QESpan span) {
+        tracer.inject(span.context(), format, carrier);
+        SpanContext extracted = (SpanContext) tracer.extract(format, carrier);
+        SpanContext expected = (SpanContext) span.context();
+        assertEquals(extracted.getTraceID(), expected.getTraceID(), carrier.toString());
+        assertEquals(extracted.getSpanID(), expected.getSpanID(), carrier.toString());
+        for (Map.Entry<String, String> item : expected.baggageItems()) {
+            assertEquals(extracted.getBaggageItem(item.getKey()), item.getValue(), carrier.toString());
+        }
+        return extracted;
+    }
+}
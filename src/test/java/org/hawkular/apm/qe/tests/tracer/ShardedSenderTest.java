@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.tracer;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.hawkular.apm.qe.tests.TestBase;
+import org.hawkular.apm.qe.tracer.ConcurrentStatsReporter;
+import org.hawkular.apm.qe.tracer.MetricsSnapshot;
+import org.hawkular.apm.qe.tracer.ShardedSender;
+import org.testng.annotations.Test;
+
+import com.twitter.zipkin.thriftjava.Span;
+import com.uber.jaeger.exceptions.SenderException;
+import com.uber.jaeger.senders.Sender;
+
+/**
+ * Checks the consistent hashing of {@link ShardedSender}: traces spread evenly, and an added endpoint takes its
+ * share of the traces from the others without moving any between them. Also checks the counts of a flush which
+ * fails on one endpoint only.
+ *
+ * @author kearls
+ */
+public class ShardedSenderTest extends TestBase {
+    private static final int TRACES = 100000;
+
+    @Test
+    public void addEndpointTest() {
+        ShardedSender three = sender(Arrays.asList("agent-1:5775", "agent-2:5775", "agent-3:5775"));
+        ShardedSender four = sender(Arrays.asList("agent-1:5775", "agent-2:5775", "agent-3:5775", "agent-4:5775"));
+        Random random = new Random(1L);
+        int[] traces = new int[3];
+        int moved = 0;
+        for (int trace = 0; trace < TRACES; trace++) {
+            long traceId = random.nextLong();
+            int before = three.shard(traceId);
+            int after = four.shard(traceId);
+            traces[before]++;
+            if (after != before) {
+                assertEquals(after, 3, "Trace moved between the endpoints there before");
+                moved++;
+            }
+        }
+        //A quarter of the traces in theory
+        assertTrue(moved > TRACES / 5 && moved < TRACES * 3 / 10, "Moved " + moved + " of " + TRACES);
+        for (int count : traces) {
+            assertTrue(count > TRACES / 4 && count < TRACES * 5 / 12, "Shares " + Arrays.toString(traces));
+        }
+    }
+
+    @Test
+    public void appendByTraceTest() throws Exception {
+        List<String> endpoints = Arrays.asList("agent-1:5775", "agent-2:5775");
+        List<RecordingSender> senders = Arrays.asList(new RecordingSender(), new RecordingSender());
+        ConcurrentStatsReporter statsReporter = new ConcurrentStatsReporter();
+        ShardedSender sender = new ShardedSender(endpoints, senders, statsReporter);
+        for (long traceId = 1; traceId <= 100; traceId++) {
+            for (int span = 0; span < 3; span++) {
+                sender.append(new Span().setTrace_id(traceId).setId(traceId * 10 + span));
+            }
+        }
+        sender.close();
+
+        Set<Long> first = new HashSet<Long>();
+        senders.get(0).spans.forEach(span -> first.add(span.getTrace_id()));
+        MetricsSnapshot metrics = statsReporter.snapshot();
+        for (int endpoint = 0; endpoint < endpoints.size(); endpoint++) {
+            for (Span span : senders.get(endpoint).spans) {
+                //A trace goes whole to one endpoint
+                assertEquals(first.contains(span.getTrace_id()), endpoint == 0, span.toString());
+                assertEquals(sender.shard(span.getTrace_id()), endpoint);
+            }
+            assertEquals(metrics.getEndpointSpansSent(endpoints.get(endpoint)), senders.get(endpoint).spans.size());
+            assertEquals(metrics.getEndpointSpansDropped(endpoints.get(endpoint)), 0L);
+        }
+        assertEquals(senders.get(0).spans.size() + senders.get(1).spans.size(), 300);
+    }
+
+    @Test
+    public void partialFailureTest() throws Exception {
+        List<String> endpoints = Arrays.asList("agent-1:5775", "agent-2:5775");
+        List<RecordingSender> senders = Arrays.asList(new RecordingSender(), new RecordingSender());
+        senders.get(1).failing = true;
+        ConcurrentStatsReporter statsReporter = new ConcurrentStatsReporter();
+        ShardedSender sender = new ShardedSender(endpoints, senders, statsReporter);
+        for (long traceId = 1; traceId <= 100; traceId++) {
+            sender.append(new Span().setTrace_id(traceId).setId(traceId));
+        }
+        int sent = senders.get(0).spans.size();
+        int failed = senders.get(1).spans.size();
+        assertTrue(sent > 0 && failed > 0, sent + " and " + failed + " spans per endpoint");
+
+        try {
+            sender.flush();
+            fail("Flush did not fail");
+        } catch (SenderException ex) {
+            assertEquals(ex.getDroppedSpanCount(), failed);
+        }
+        //The spans of the endpoint which did not fail are counted as sent all the same
+        MetricsSnapshot metrics = statsReporter.snapshot();
+        assertEquals(metrics.getSpansReported(), sent);
+        assertEquals(metrics.getEndpointSpansSent(endpoints.get(0)), sent);
+        assertEquals(metrics.getEndpointSpansDropped(endpoints.get(1)), failed);
+    }
+
+    private static ShardedSender sender(List<String> endpoints) {
+        List<Sender> senders = new ArrayList<Sender>();
+        for (int endpoint = 0; endpoint < endpoints.size(); endpoint++) {
+            senders.add(new RecordingSender());
+        }
+        return new ShardedSender(endpoints, senders, new ConcurrentStatsReporter());
+    }
+
+    //Keeps the spans, sends them on flush, or drops them if failing
+    private static class RecordingSender implements Sender {
+        private final List<Span> spans = new ArrayList<Span>();
+        private int pending = 0;
+        private boolean failing = false;
+
+        @Override
+        public int append(Span span) {
+            spans.add(span);
+            pending++;
+            return 0;
+        }
+
+        @Override
+        public int flush() throws SenderException {
+            int flushed = pending;
+            pending = 0;
+            if (failing) {
+                throw new SenderException("Failed to flush", null, flushed);
+            }
+            return flushed;
+        }
+
+        @Override
+        public int close() throws SenderException {
+            return flush();
+        }
+    }
+}
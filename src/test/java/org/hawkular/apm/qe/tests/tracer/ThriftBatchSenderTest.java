@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015-2017 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.apm.qe.tests.tracer;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.hawkular.apm.qe.tests.TestBase;
+import org.hawkular.apm.qe.tracer.ThriftBatchSender;
+import org.testng.annotations.Test;
+
+import com.twitter.zipkin.thriftjava.Span;
+import com.uber.jaeger.exceptions.SenderException;
+
+/**
+ * Checks the spans a {@link ThriftBatchSender} reports as sent or dropped when its transport fails.
+ *
+ * @author kearls
+ */
+public class ThriftBatchSenderTest extends TestBase {
+
+    @Test
+    public void failedBatchDropsAppendedSpanTest() throws Exception {
+        FailingSender sender = new FailingSender();
+        //A span is 17 bytes, the batch holds three
+        for (int index = 0; index < 3; index++) {
+            assertEquals(sender.append(span(index)), 0);
+        }
+        try {
+            sender.append(span(3));
+            fail("Send did not fail");
+        } catch (SenderException ex) {
+            //The batch of three and the span appended
+            assertEquals(ex.getDroppedSpanCount(), 4);
+        }
+        //Nothing left from the failed batch
+        assertEquals(sender.flush(), 0);
+    }
+
+    private static Span span(int index) {
+        return new Span().setTrace_id(1L).setId(index + 1L).setName("batch-span");
+    }
+
+    private static class FailingSender extends ThriftBatchSender {
+
+        @Override
+        protected TProtocol createProtocol(TIOStreamTransport transport) {
+            return new TCompactProtocol(transport);
+        }
+
+        @Override
+        protected int getMaxBatchSize() {
+            return 60;
+        }
+
+        @Override
+        protected int getBatchOverhead() {
+            return 0;
+        }
+
+        @Override
+        protected void send(List<byte[]> spans, int size) throws IOException {
+            throw new IOException("Collector down");
+        }
+
+        @Override
+        protected void closeTransport() {
+        }
+    }
+}